@@ -0,0 +1,224 @@
+package gameServer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the memory and throughput of the server modes under many mostly-idle connections.
+ * <p>
+ * For every mode a game server process is started, the given number of idle players connect and
+ * say HELLO, and the resident memory and thread count of the server process are sampled. Then a
+ * smaller set of active clients sends lock-step commands on top of the idle players to measure
+ * the command throughput.
+ * <p>
+ * usage: {@code java -cp .:bench gameServer.ConnectionBenchmark [idle] [clients] [commands] [modes...]}
+ * <br>
+ * Opening more than a few thousand idle connections needs a raised {@code ulimit -n}.
+ */
+final class ConnectionBenchmark {
+    /**
+     * Port number the benchmarked server listens on.
+     */
+    private static final int PORT = 14800;
+
+    /**
+     * Runs the benchmark.
+     * @param args idle connections, active clients, commands per active client and the modes to compare
+     * @throws Exception thrown if the server can't be started or a connection fails
+     */
+    public static void main(String[] args) throws Exception {
+        int idle = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int commands = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+        List<String> modes = new ArrayList<>();
+        for (int i = 3; i < args.length; i++) {
+            modes.add(args[i]);
+        }
+        if (modes.isEmpty()) {
+            modes = List.of("thread", "virtual", "nio", "async");
+        }
+
+        System.out.printf("%-8s %8s %10s %10s %12s %14s%n",
+                "mode", "idle", "threads", "rss(MiB)", "rss/conn(KiB)", "commands/s");
+        for (String mode : modes) {
+            run(mode, idle, clients, commands);
+        }
+    }
+
+    /**
+     * Benchmarks one server mode.
+     * @param mode server mode to benchmark
+     * @param idle number of idle connections
+     * @param clients number of active clients
+     * @param commands number of commands sent by each active client
+     * @throws Exception thrown if the server can't be started or a connection fails
+     */
+    private static void run(String mode, int idle, int clients, int commands) throws Exception {
+        Process server = startServer(mode);
+        List<SocketChannel> idleChannels = new ArrayList<>();
+        try {
+            long baseRss = residentKiB(server.pid());
+            for (int i = 0; i < idle; i++) {
+                idleChannels.add(hello("idle" + i));
+            }
+            System.gc();
+            Thread.sleep(1000);
+            long rss = residentKiB(server.pid());
+            long threads = threadCount(server.pid());
+            double throughput = throughput(clients, commands);
+            System.out.printf("%-8s %8d %10s %10s %12s %14.0f%n", mode, idle,
+                    threads < 0 ? "n/a" : Long.toString(threads),
+                    rss < 0 ? "n/a" : Long.toString(rss / 1024),
+                    rss < 0 || idle == 0 ? "n/a" : String.format("%.1f", (rss - baseRss) / (double) idle),
+                    throughput);
+        } finally {
+            for (SocketChannel channel : idleChannels) {
+                channel.close();
+            }
+            server.destroy();
+            server.waitFor();
+        }
+    }
+
+    /**
+     * Starts a game server process in the given mode and waits for it to accept connections.
+     * @param mode server mode
+     * @return server process
+     * @throws Exception thrown if the server doesn't come up
+     */
+    private static Process startServer(String mode) throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        ProcessBuilder builder = new ProcessBuilder(java, "-DgameServer.mode=" + mode,
+                "-cp", System.getProperty("java.class.path"), "gameServer.GameServer", Integer.toString(PORT));
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process server = builder.start();
+        for (int attempt = 0; attempt < 100; attempt++) {
+            try {
+                // the server is up once it accepts a connection
+                new Socket("localhost", PORT).close();
+                return server;
+            } catch (IOException e) {
+                Thread.sleep(100);
+            }
+        }
+        server.destroy();
+        throw new IOException("game server in mode " + mode + " did not start");
+    }
+
+    /**
+     * Connects a player and says HELLO.
+     * @param username name of the player
+     * @return connected channel, left open and idle
+     * @throws IOException thrown if the connection fails
+     */
+    private static SocketChannel hello(String username) throws IOException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", PORT));
+        channel.write(ByteBuffer.wrap(("HELLO " + username + "\n").getBytes(StandardCharsets.UTF_8)));
+        ByteBuffer response = ByteBuffer.allocate(256);
+        while (response.position() == 0 || response.get(response.position() - 1) != '\n') {
+            if (channel.read(response) < 0) {
+                throw new IOException("connection closed by the server");
+            }
+        }
+        return channel;
+    }
+
+    /**
+     * Measures the command throughput of lock-step clients.
+     * @param clients number of active clients
+     * @param commands number of commands sent by each client
+     * @return commands per second over all the clients
+     * @throws Exception thrown if a client fails
+     */
+    private static double throughput(int clients, int commands) throws Exception {
+        CountDownLatch ready = new CountDownLatch(clients);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(clients);
+        AtomicLong failures = new AtomicLong();
+        for (int c = 0; c < clients; c++) {
+            String username = "active" + c;
+            new Thread(() -> {
+                try (Socket socket = new Socket("localhost", PORT)) {
+                    socket.setTcpNoDelay(true);
+                    OutputStream out = socket.getOutputStream();
+                    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                    out.write(("HELLO " + username + "\n").getBytes(StandardCharsets.UTF_8));
+                    in.readLine();
+                    byte[] command = "JOIN_GAME missing\n".getBytes(StandardCharsets.UTF_8);
+                    ready.countDown();
+                    start.await();
+                    for (int i = 0; i < commands; i++) {
+                        out.write(command);
+                        in.readLine();
+                    }
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                    ready.countDown();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        ready.await();
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+        if (failures.get() > 0) {
+            System.out.println(failures.get() + " active clients failed");
+        }
+        return (double) clients * commands * 1_000_000_000L / elapsed;
+    }
+
+    /**
+     * Reads a value in kB from {@code /proc/<pid>/status}.
+     * @param pid process id
+     * @param field name of the field, e.g. VmRSS
+     * @return value of the field, or -1 if it can't be read on this platform
+     */
+    private static long procStatus(long pid, String field) {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc", Long.toString(pid), "status"))) {
+                if (line.startsWith(field + ":")) {
+                    return Long.parseLong(line.substring(field.length() + 1).replace("kB", "").trim());
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the resident memory of a process.
+     * @param pid process id
+     * @return resident memory in KiB, or -1 if it can't be read on this platform
+     */
+    private static long residentKiB(long pid) {
+        return procStatus(pid, "VmRSS");
+    }
+
+    /**
+     * Returns the number of operating system threads of a process.
+     * @param pid process id
+     * @return number of threads, or -1 if it can't be read on this platform
+     */
+    private static long threadCount(long pid) {
+        return procStatus(pid, "Threads");
+    }
+}
@@ -0,0 +1,142 @@
+package gameServer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares indexing a large upload on the receiving thread with the {@link WordTokenizer} and on fork-join pools of
+ * increasing parallelism with the {@link ParallelIndexer}.
+ * <p>
+ * The test corpus, with one word in eight accented so the slow path is taken too, is repeated up to the given size
+ * and fed in 16 KiB chunks, the way an upload arrives. Every parallel index is checked to hold the same counts as
+ * the sequential one, for the total, the distinct words and every word of the corpus.
+ * <p>
+ * usage: {@code java -cp .:bench gameServer.ParallelIndexBenchmark [MiB] [parallelism...]}
+ */
+final class ParallelIndexBenchmark {
+    /**
+     * Corpus repeated to make the upload.
+     */
+    private static final Path CORPUS = Path.of("test", "test.txt");
+    /**
+     * Size of the chunks the upload is fed in.
+     */
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    /**
+     * Runs the benchmark.
+     * @param args size of the upload in MiB and the parallelism levels to compare
+     * @throws IOException thrown if the corpus can't be read
+     */
+    public static void main(String[] args) throws IOException {
+        int size = (args.length > 0 ? Integer.parseInt(args[0]) : 256) * 1024 * 1024;
+        List<Integer> levels = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            levels.add(Integer.parseInt(args[i]));
+        }
+        if (levels.isEmpty()) {
+            for (int level = 1; level <= Runtime.getRuntime().availableProcessors(); level *= 2) {
+                levels.add(level);
+            }
+        }
+        String corpus = accent(Files.readString(CORPUS, StandardCharsets.UTF_8));
+        byte[] text = repeat(corpus.getBytes(StandardCharsets.UTF_8), size);
+        Set<String> vocabulary = new LinkedHashSet<>(List.of(corpus.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}_]+")));
+        vocabulary.remove("");
+
+        System.out.printf("%-12s %10s %12s %10s %10s%n", "indexer", "MiB", "words", "ms", "MB/s");
+        for (int round = 0; round < 2; round++) {
+            // the first round warms up the JIT
+            boolean print = round > 0;
+            long start = System.nanoTime();
+            WordIndex sequential = new WordIndex();
+            WordTokenizer tokenizer = new WordTokenizer(sequential);
+            for (int offset = 0; offset < text.length; offset += CHUNK_SIZE) {
+                tokenizer.write(ByteBuffer.wrap(text, offset, Math.min(CHUNK_SIZE, text.length - offset)));
+            }
+            tokenizer.finish();
+            report(print, "sequential", text.length, sequential.words(), System.nanoTime() - start);
+
+            for (int level : levels) {
+                ForkJoinPool pool = new ForkJoinPool(level);
+                start = System.nanoTime();
+                ParallelIndexer indexer = new ParallelIndexer(pool, null, true);
+                for (int offset = 0; offset < text.length; offset += CHUNK_SIZE) {
+                    indexer.write(ByteBuffer.wrap(text, offset, Math.min(CHUNK_SIZE, text.length - offset)));
+                }
+                WordIndex parallel = indexer.finish();
+                report(print, "parallel " + level, text.length, parallel.words(), System.nanoTime() - start);
+                pool.shutdown();
+                check(sequential, parallel, vocabulary);
+            }
+        }
+    }
+
+    /**
+     * Checks that two indexes hold the same counts.
+     * @param expected index built sequentially
+     * @param actual index built in parallel
+     * @param vocabulary words whose counts are compared
+     */
+    private static void check(WordIndex expected, WordIndex actual, Set<String> vocabulary) {
+        if (expected.words() != actual.words() || expected.distinctWords() != actual.distinctWords()) {
+            throw new IllegalStateException("the parallel index counts different words");
+        }
+        for (String word : vocabulary) {
+            if (expected.count(word) != actual.count(word)) {
+                throw new IllegalStateException("the parallel index counts " + word + " differently");
+            }
+        }
+    }
+
+    /**
+     * Replaces the first letter e of one word in eight by an accented e.
+     * @param text ASCII text
+     * @return text with accented words
+     */
+    private static String accent(String text) {
+        String[] words = text.split(" ", -1);
+        for (int i = 0; i < words.length; i += 8) {
+            words[i] = words[i].replaceFirst("e", "é");
+        }
+        return String.join(" ", words);
+    }
+
+    /**
+     * Repeats a text up to a size.
+     * @param text text to be repeated
+     * @param size size of the result, at least
+     * @return repeated text
+     */
+    private static byte[] repeat(byte[] text, int size) {
+        byte[] repeated = new byte[(size / text.length + 1) * text.length];
+        for (int offset = 0; offset < repeated.length; offset += text.length) {
+            System.arraycopy(text, 0, repeated, offset, text.length);
+        }
+        return repeated;
+    }
+
+    /**
+     * Prints the throughput of one indexer.
+     * @param print false for a warm-up round, which isn't printed
+     * @param name name of the indexer
+     * @param bytes size of the text
+     * @param words number of words counted
+     * @param nanos time taken in nanoseconds
+     */
+    private static void report(boolean print, String name, long bytes, long words, long nanos) {
+        if (print) {
+            System.out.printf("%-12s %10.1f %12d %10d %10.1f%n", name, bytes / (1024.0 * 1024), words,
+                    nanos / 1_000_000, bytes * 1000.0 / nanos);
+        }
+    }
+}
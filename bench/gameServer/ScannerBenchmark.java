@@ -0,0 +1,147 @@
+package gameServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the scalar tokenizer with the Vector API {@link WordScanner} on the test corpus.
+ * <p>
+ * JMH isn't available to the build, so the benchmark follows its scheme by hand: every case runs in a JVM of its own,
+ * forked with the options of this one so the cases don't share their JIT profiles, where a number of timed warm-up
+ * iterations is run and discarded, then measured iterations of a fixed time each, and the mean throughput is
+ * printed with its 99.9% confidence interval, as JMH does. An operation tokenizes the whole of {@code test/test.txt},
+ * either into a sink that only sums the hashes, which leaves the boundary scanning as the work, or into a
+ * {@link WordIndex} kept across the operations, so its words are counted rather than added. The vector cases are
+ * skipped unless the JVM runs with {@code --add-modules jdk.incubator.vector} and the {@code simd} classes are on
+ * the class path, as {@code make bench} does.
+ * <p>
+ * usage: {@code java --add-modules jdk.incubator.vector -cp .:simd:bench gameServer.ScannerBenchmark [iterations]}
+ * <br>or for one case in this JVM: {@code ... gameServer.ScannerBenchmark <iterations> <scalar|vector> <scan|index>}
+ */
+final class ScannerBenchmark {
+    /**
+     * Corpus tokenized by every operation.
+     */
+    private static final Path CORPUS = Path.of("test", "test.txt");
+    /**
+     * Number of warm-up iterations.
+     */
+    private static final int WARMUP_ITERATIONS = 5;
+    /**
+     * Length of an iteration in nanoseconds.
+     */
+    private static final long ITERATION_NANOS = 1_000_000_000L;
+    /**
+     * Student's t quantiles for a 99.9% two-sided interval, by degrees of freedom from 1 to 10.
+     */
+    private static final double[] T_999 = {636.6, 31.60, 12.92, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587};
+    /**
+     * Sink of the hashes, so the tokenizing can't be optimized away.
+     */
+    private static long sink;
+
+    /**
+     * Runs the benchmark, or one case of it.
+     * @param args number of measured iterations per case, then the backend and the work of a single case
+     * @throws Exception thrown if the corpus can't be read or a forked JVM fails
+     */
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        byte[] corpus = Files.readAllBytes(CORPUS);
+        WordScanner vector = WordScanner.loadVector();
+        if (args.length == 3) {
+            boolean useVector = args[1].equals("vector");
+            if (useVector && vector == null) {
+                return;
+            }
+            run(args[1] + " " + args[2], corpus, useVector ? vector : null, args[2].equals("index"), iterations);
+            return;
+        }
+        System.out.println("corpus " + CORPUS + ", " + corpus.length + " bytes; vector scanner: "
+                + (vector == null ? "not available" : vector.describe()));
+
+        System.out.printf("%-22s %5s %12s %10s %10s%n", "case", "cnt", "MB/s", "error", "ns/byte");
+        for (String backend : List.of("scalar", "vector")) {
+            for (String work : List.of("scan", "index")) {
+                fork(iterations, backend, work);
+            }
+        }
+    }
+
+    /**
+     * Runs one case in a JVM forked with the options and class path of this one.
+     * @param iterations number of measured iterations
+     * @param backend scalar or vector
+     * @param work scan or index
+     * @throws Exception thrown if the JVM can't be started or is interrupted
+     */
+    private static void fork(int iterations, String backend, String work) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.addAll(List.of("-cp", System.getProperty("java.class.path"), ScannerBenchmark.class.getName(),
+                Integer.toString(iterations), backend, work));
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+        // the warning about the incubator module would be repeated by every fork
+        builder.redirectError(ProcessBuilder.Redirect.DISCARD);
+        builder.start().waitFor();
+    }
+
+    /**
+     * Warms up and measures one case and prints its throughput.
+     * @param name name of the case
+     * @param corpus bytes of the corpus
+     * @param scanner backend of the tokenizer, or null for the scalar one
+     * @param index true to count the words in a WordIndex, false to only sum their hashes
+     * @param iterations number of measured iterations
+     */
+    private static void run(String name, byte[] corpus, WordScanner scanner, boolean index, int iterations) {
+        WordTokenizer.Sink words = index ? new WordIndex() : (bytes, offset, length, hash) -> sink += hash;
+        WordTokenizer tokenizer = new WordTokenizer(words, scanner);
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iteration(corpus, tokenizer);
+        }
+        double[] throughputs = new double[iterations];
+        for (int i = 0; i < iterations; i++) {
+            throughputs[i] = iteration(corpus, tokenizer);
+        }
+        double mean = 0;
+        for (double throughput : throughputs) {
+            mean += throughput / iterations;
+        }
+        double variance = 0;
+        for (double throughput : throughputs) {
+            variance += (throughput - mean) * (throughput - mean) / Math.max(1, iterations - 1);
+        }
+        double error = iterations > 1
+                ? T_999[Math.min(iterations - 2, T_999.length - 1)] * Math.sqrt(variance / iterations) : Double.NaN;
+        System.out.printf("%-22s %5d %12.1f %10.1f %10.3f%n", name, iterations, mean, error, 1000 / mean);
+    }
+
+    /**
+     * Tokenizes the corpus over and over for the length of an iteration.
+     * @param corpus bytes of the corpus
+     * @param tokenizer tokenizer of the case
+     * @return throughput in MB/s
+     */
+    private static double iteration(byte[] corpus, WordTokenizer tokenizer) {
+        long start = System.nanoTime();
+        long end = start + ITERATION_NANOS;
+        long operations = 0;
+        long now;
+        do {
+            tokenizer.write(ByteBuffer.wrap(corpus));
+            tokenizer.finish();
+            operations++;
+            now = System.nanoTime();
+        } while (now < end);
+        return operations * corpus.length * 1000.0 / (now - start);
+    }
+}
@@ -0,0 +1,214 @@
+package gameServer;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of scheduling and cancelling timeouts on the {@link TimerWheel} and on a
+ * {@link ScheduledThreadPoolExecutor} with a large number of timeouts pending.
+ * <p>
+ * For each scheduler, the given number of timeouts is scheduled with deadlines spread over ten minutes,
+ * the way idle connections are checked. With all of them pending, every timeout is then rescheduled once
+ * (cancel and schedule, as for a player that was heard from), and finally all of them are cancelled.
+ * The heap held by the pending timeouts and the lateness of a batch of short timeouts are reported too.
+ * <p>
+ * usage: {@code java -cp .:bench gameServer.TimerWheelBenchmark [timeouts]}
+ */
+final class TimerWheelBenchmark {
+    /**
+     * Longest delay of the scheduled timeouts in milliseconds.
+     */
+    private static final long MAX_DELAY_MILLIS = 10 * 60 * 1000;
+    /**
+     * Number of short timeouts whose lateness is measured.
+     */
+    private static final int LATENESS_SAMPLES = 1000;
+
+    /**
+     * The interface represents a scheduler under test.
+     */
+    private interface Scheduler {
+        /**
+         * Schedules a task.
+         * @param task task to be run
+         * @param delayMillis delay in milliseconds
+         * @return handle to cancel the task
+         */
+        Object schedule(Runnable task, long delayMillis);
+
+        /**
+         * Cancels a task.
+         * @param handle handle returned when the task was scheduled
+         */
+        void cancel(Object handle);
+
+        /**
+         * Waits until the scheduler has absorbed the scheduled and cancelled tasks.
+         * @throws InterruptedException thrown if the wait is interrupted
+         */
+        void settle() throws InterruptedException;
+
+        /**
+         * Stops the scheduler.
+         */
+        void close();
+    }
+
+    /**
+     * Runs the benchmark.
+     * @param args number of pending timeouts
+     * @throws InterruptedException thrown if the benchmark is interrupted
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int timeouts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        System.out.printf("%-10s %10s %14s %16s %12s %12s %12s %14s%n", "scheduler", "timeouts",
+                "schedule(ns)", "reschedule(ns)", "cancel(ns)", "heap(MiB)", "late p50(ms)", "late max(ms)");
+        for (int round = 0; round < 2; round++) {
+            // the first round warms up the JIT
+            run("wheel", wheel(), timeouts);
+            run("executor", executor(), timeouts);
+        }
+    }
+
+    /**
+     * Creates a timer wheel with the tick and size used by the game server.
+     * @return scheduler running on the timer wheel
+     */
+    private static Scheduler wheel() {
+        TimerWheel timers = new TimerWheel(100, TimeUnit.MILLISECONDS, 512);
+        Thread thread = new Thread(timers, "timer-wheel");
+        thread.setDaemon(true);
+        thread.start();
+        return new Scheduler() {
+            public Object schedule(Runnable task, long delayMillis) {
+                return timers.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+            }
+
+            public void cancel(Object handle) {
+                ((TimerWheel.Timeout) handle).cancel();
+            }
+
+            public void settle() throws InterruptedException {
+                // the wheel moves at most 100k scheduled timeouts into the buckets per tick
+                Thread.sleep(1500);
+            }
+
+            public void close() {
+                timers.close();
+            }
+        };
+    }
+
+    /**
+     * Creates a single threaded scheduled executor that removes cancelled tasks from its queue.
+     * @return scheduler running on the executor
+     */
+    private static Scheduler executor() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+        executor.setRemoveOnCancelPolicy(true);
+        return new Scheduler() {
+            public Object schedule(Runnable task, long delayMillis) {
+                return executor.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+            }
+
+            public void cancel(Object handle) {
+                ((ScheduledFuture<?>) handle).cancel(false);
+            }
+
+            public void settle() {
+            }
+
+            public void close() {
+                executor.shutdownNow();
+            }
+        };
+    }
+
+    /**
+     * Measures one scheduler.
+     * @param name name of the scheduler in the report
+     * @param scheduler scheduler under test
+     * @param timeouts number of pending timeouts
+     * @throws InterruptedException thrown if the benchmark is interrupted
+     */
+    private static void run(String name, Scheduler scheduler, int timeouts) throws InterruptedException {
+        Random random = new Random(42);
+        Runnable task = () -> { };
+        long[] delays = new long[timeouts];
+        for (int i = 0; i < timeouts; i++) {
+            delays[i] = MAX_DELAY_MILLIS / 10 + (long) (random.nextDouble() * MAX_DELAY_MILLIS * 9 / 10);
+        }
+        Object[] handles = new Object[timeouts];
+        long heapBefore = usedHeap();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < timeouts; i++) {
+            handles[i] = scheduler.schedule(task, delays[i]);
+        }
+        double schedule = (System.nanoTime() - start) / (double) timeouts;
+        scheduler.settle();
+        long heap = usedHeap() - heapBefore;
+
+        start = System.nanoTime();
+        for (int i = 0; i < timeouts; i++) {
+            scheduler.cancel(handles[i]);
+            handles[i] = scheduler.schedule(task, delays[i]);
+        }
+        double reschedule = (System.nanoTime() - start) / (double) timeouts;
+        scheduler.settle();
+
+        long[] lateness = lateness(scheduler);
+
+        start = System.nanoTime();
+        for (int i = 0; i < timeouts; i++) {
+            scheduler.cancel(handles[i]);
+        }
+        double cancel = (System.nanoTime() - start) / (double) timeouts;
+        scheduler.close();
+
+        System.out.printf("%-10s %10d %14.1f %16.1f %12.1f %12.1f %12d %14d%n", name, timeouts,
+                schedule, reschedule, cancel, heap / (1024.0 * 1024), lateness[lateness.length / 2],
+                lateness[lateness.length - 1]);
+    }
+
+    /**
+     * Measures how late short timeouts fire while the other timeouts are pending.
+     * @param scheduler scheduler under test
+     * @return sorted lateness of the samples in milliseconds
+     * @throws InterruptedException thrown if the benchmark is interrupted
+     */
+    private static long[] lateness(Scheduler scheduler) throws InterruptedException {
+        long[] lateness = new long[LATENESS_SAMPLES];
+        CountDownLatch fired = new CountDownLatch(LATENESS_SAMPLES);
+        for (int i = 0; i < LATENESS_SAMPLES; i++) {
+            int sample = i;
+            long delay = 200 + i % 300;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+            scheduler.schedule(() -> {
+                lateness[sample] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - deadline);
+                fired.countDown();
+            }, delay);
+        }
+        fired.await();
+        Arrays.sort(lateness);
+        return lateness;
+    }
+
+    /**
+     * Returns the heap in use after a garbage collection.
+     * @return used heap in bytes
+     * @throws InterruptedException thrown if the wait for the collection is interrupted
+     */
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,174 @@
+package gameServer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Measures the throughput of indexing an upload with the {@link WordTokenizer} and with the String based
+ * tokenizing it replaced.
+ * <p>
+ * The test corpus is repeated up to the given size and fed in 16 KiB chunks, the way an upload arrives, to a fresh
+ * {@link WordIndex} per run. The String path splits the bytes at whitespace, decodes every token, splits it into
+ * words and lower cases and encodes every word again, as the upload did before. Both are run on the corpus as it
+ * is, which is ASCII, and on a copy where one word in eight is accented, which makes the tokenizer take its slow
+ * path for those words; the two paths must count the same words.
+ * <p>
+ * usage: {@code java -cp .:bench gameServer.TokenizerBenchmark [MiB]}
+ */
+final class TokenizerBenchmark {
+    /**
+     * Corpus repeated to make the upload.
+     */
+    private static final Path CORPUS = Path.of("test", "test.txt");
+    /**
+     * Size of the chunks the upload is fed in.
+     */
+    private static final int CHUNK_SIZE = 16 * 1024;
+    /**
+     * Bytes of the word being received by the String path.
+     */
+    private static byte[] word = new byte[64];
+    /**
+     * Number of valid bytes in {@link #word}.
+     */
+    private static int wordLength;
+
+    /**
+     * Runs the benchmark.
+     * @param args size of the upload in MiB
+     * @throws IOException thrown if the corpus can't be read
+     */
+    public static void main(String[] args) throws IOException {
+        int size = (args.length > 0 ? Integer.parseInt(args[0]) : 64) * 1024 * 1024;
+        byte[] corpus = Files.readAllBytes(CORPUS);
+        byte[] ascii = repeat(corpus, size);
+        byte[] accented = repeat(accent(corpus), size);
+
+        System.out.printf("%-10s %-10s %10s %12s %10s%n", "text", "tokenizer", "MiB", "words", "MB/s");
+        for (int round = 0; round < 3; round++) {
+            // the first round warms up the JIT
+            boolean print = round > 0;
+            run(print, "ascii", ascii);
+            run(print, "accented", accented);
+        }
+    }
+
+    /**
+     * Indexes a text with both paths, prints their throughput and checks they count the same words.
+     * @param print false for a warm-up round, which isn't printed
+     * @param name name of the text
+     * @param text text to be indexed
+     */
+    private static void run(boolean print, String name, byte[] text) {
+        long start = System.nanoTime();
+        WordIndex bytes = new WordIndex();
+        WordTokenizer tokenizer = new WordTokenizer(bytes);
+        for (int offset = 0; offset < text.length; offset += CHUNK_SIZE) {
+            tokenizer.write(ByteBuffer.wrap(text, offset, Math.min(CHUNK_SIZE, text.length - offset)));
+        }
+        tokenizer.finish();
+        report(print, name, "bytes", text.length, bytes.words(), System.nanoTime() - start);
+
+        start = System.nanoTime();
+        WordIndex strings = new WordIndex();
+        for (int offset = 0; offset < text.length; offset += CHUNK_SIZE) {
+            splitStrings(strings, ByteBuffer.wrap(text, offset, Math.min(CHUNK_SIZE, text.length - offset)));
+        }
+        endWord(strings);
+        report(print, name, "strings", text.length, strings.words(), System.nanoTime() - start);
+
+        if (bytes.words() != strings.words() || bytes.distinctWords() != strings.distinctWords()) {
+            throw new IllegalStateException("the tokenizers count different words");
+        }
+    }
+
+    /**
+     * Splits a chunk at whitespace and counts the words of every token through Strings.
+     * @param index index counting the words
+     * @param chunk bytes of the text
+     */
+    private static void splitStrings(WordIndex index, ByteBuffer chunk) {
+        while (chunk.hasRemaining()) {
+            byte b = chunk.get();
+            if (b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r') {
+                endWord(index);
+            } else {
+                if (wordLength == word.length) {
+                    word = Arrays.copyOf(word, word.length * 2);
+                }
+                word[wordLength++] = b;
+            }
+        }
+    }
+
+    /**
+     * Counts the words of the whitespace separated token received so far through Strings.
+     * @param index index counting the words
+     */
+    private static void endWord(WordIndex index) {
+        if (wordLength == 0) {
+            return;
+        }
+        String text = new String(word, 0, wordLength, StandardCharsets.UTF_8);
+        wordLength = 0;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            if (i < text.length() && WordTokenizer.isWordChar(text.charAt(i))) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                byte[] bytes = text.substring(start, i).toLowerCase().getBytes(StandardCharsets.UTF_8);
+                index.word(bytes, 0, bytes.length, WordTable.hash(bytes, 0, bytes.length));
+                start = -1;
+            }
+        }
+    }
+
+    /**
+     * Repeats a text up to a size, cutting it after a line.
+     * @param text text to be repeated
+     * @param size size of the result, at least
+     * @return repeated text
+     */
+    private static byte[] repeat(byte[] text, int size) {
+        byte[] repeated = new byte[(size / text.length + 1) * text.length];
+        for (int offset = 0; offset < repeated.length; offset += text.length) {
+            System.arraycopy(text, 0, repeated, offset, text.length);
+        }
+        return repeated;
+    }
+
+    /**
+     * Replaces the first letter e of one word in eight by an accented e.
+     * @param text ASCII text
+     * @return text with accented words
+     */
+    private static byte[] accent(byte[] text) {
+        String[] words = new String(text, StandardCharsets.UTF_8).split(" ", -1);
+        for (int i = 0; i < words.length; i += 8) {
+            words[i] = words[i].replaceFirst("e", "é");
+        }
+        return String.join(" ", words).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Prints the throughput of one path.
+     * @param print false for a warm-up round, which isn't printed
+     * @param name name of the text
+     * @param tokenizer name of the path
+     * @param bytes size of the text
+     * @param words number of words counted
+     * @param nanos time taken in nanoseconds
+     */
+    private static void report(boolean print, String name, String tokenizer, long bytes, long words, long nanos) {
+        if (print) {
+            System.out.printf("%-10s %-10s %10.1f %12d %10.1f%n", name, tokenizer, bytes / (1024.0 * 1024), words,
+                    bytes * 1000.0 / nanos);
+        }
+    }
+}
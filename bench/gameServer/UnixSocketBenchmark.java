@@ -0,0 +1,175 @@
+package gameServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares the round-trip latency of a co-located client over loopback TCP and over a Unix domain socket.
+ * <p>
+ * For every mode a game server process is started listening on both the port and a socket path. A client
+ * connects over each transport, says HELLO and sends lock-step PINGs, timing each PING until its PONG is
+ * read; the average and percentiles are printed after a warm-up of the same length.
+ * <p>
+ * usage: {@code java -cp .:bench gameServer.UnixSocketBenchmark [pings] [modes...]}
+ */
+final class UnixSocketBenchmark {
+    /**
+     * Port number the benchmarked server listens on.
+     */
+    private static final int PORT = 14801;
+    /**
+     * Encoded PING command.
+     */
+    private static final byte[] PING = "PING\n".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Runs the benchmark.
+     * @param args number of timed PINGs per transport and the modes to compare
+     * @throws Exception thrown if the server can't be started or a connection fails
+     */
+    public static void main(String[] args) throws Exception {
+        int pings = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        List<String> modes = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            modes.add(args[i]);
+        }
+        if (modes.isEmpty()) {
+            modes = List.of("thread", "virtual", "nio", "async");
+        }
+
+        System.out.printf("%-8s %-6s %10s %10s %10s %10s%n", "mode", "via", "avg(us)", "p50(us)", "p99(us)", "p999(us)");
+        for (String mode : modes) {
+            run(mode, pings);
+        }
+    }
+
+    /**
+     * Benchmarks both transports of one server mode.
+     * @param mode server mode to benchmark
+     * @param pings number of timed PINGs per transport
+     * @throws Exception thrown if the server can't be started or a connection fails
+     */
+    private static void run(String mode, int pings) throws Exception {
+        Path socketPath = Files.createTempDirectory("gameServer").resolve("game.sock");
+        Process server = startServer(mode, socketPath);
+        try {
+            report(mode, "tcp", roundTrips(new InetSocketAddress("localhost", PORT), pings));
+            report(mode, "unix", roundTrips(UnixDomainSocketAddress.of(socketPath), pings));
+        } finally {
+            server.destroy();
+            server.waitFor();
+            Files.deleteIfExists(socketPath);
+            Files.deleteIfExists(socketPath.getParent());
+        }
+    }
+
+    /**
+     * Starts a game server process in the given mode and waits for it to accept connections on both transports.
+     * @param mode server mode
+     * @param socketPath path of the Unix domain socket
+     * @return server process
+     * @throws Exception thrown if the server doesn't come up
+     */
+    private static Process startServer(String mode, Path socketPath) throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        ProcessBuilder builder = new ProcessBuilder(java, "-DgameServer.mode=" + mode,
+                "-DgameServer.unixSocketPath=" + socketPath,
+                "-cp", System.getProperty("java.class.path"), "gameServer.GameServer", Integer.toString(PORT));
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process server = builder.start();
+        for (int attempt = 0; attempt < 100; attempt++) {
+            try {
+                // the server is up once both listeners accept a connection
+                SocketChannel.open(new InetSocketAddress("localhost", PORT)).close();
+                SocketChannel.open(UnixDomainSocketAddress.of(socketPath)).close();
+                return server;
+            } catch (IOException e) {
+                Thread.sleep(100);
+            }
+        }
+        server.destroy();
+        throw new IOException("game server in mode " + mode + " did not start");
+    }
+
+    /**
+     * Times lock-step PINGs over one connection, after as many untimed ones to warm up.
+     * @param address address of the server, a port or a socket path
+     * @param pings number of timed PINGs
+     * @return round-trip time of each timed PING in nanoseconds
+     * @throws IOException thrown if the connection fails
+     */
+    private static long[] roundTrips(SocketAddress address, int pings) throws IOException {
+        try (SocketChannel channel = address instanceof UnixDomainSocketAddress
+                ? SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open()) {
+            if (!(address instanceof UnixDomainSocketAddress)) {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            }
+            channel.connect(address);
+            ByteBuffer response = ByteBuffer.allocate(256);
+            channel.write(ByteBuffer.wrap(("HELLO latency" + System.nanoTime() + "\n").getBytes(StandardCharsets.UTF_8)));
+            readLine(channel, response);
+            long[] times = new long[pings];
+            for (int i = -pings; i < pings; i++) {
+                long start = System.nanoTime();
+                channel.write(ByteBuffer.wrap(PING));
+                readLine(channel, response);
+                if (i >= 0) {
+                    times[i] = System.nanoTime() - start;
+                }
+            }
+            return times;
+        }
+    }
+
+    /**
+     * Reads one response line from a blocking channel.
+     * @param channel channel to read from
+     * @param response buffer the line is read into, cleared first
+     * @throws IOException thrown if the server closes the connection
+     */
+    private static void readLine(SocketChannel channel, ByteBuffer response) throws IOException {
+        response.clear();
+        while (response.position() == 0 || response.get(response.position() - 1) != '\n') {
+            if (channel.read(response) < 0) {
+                throw new IOException("connection closed by the server");
+            }
+        }
+    }
+
+    /**
+     * Prints the average and percentiles of the round-trip times of one transport.
+     * @param mode server mode
+     * @param via name of the transport
+     * @param times round-trip times in nanoseconds
+     */
+    private static void report(String mode, String via, long[] times) {
+        Arrays.sort(times);
+        double average = Arrays.stream(times).average().orElse(0);
+        System.out.printf("%-8s %-6s %10.1f %10.1f %10.1f %10.1f%n", mode, via, average / 1000,
+                percentile(times, 0.50) / 1000, percentile(times, 0.99) / 1000, percentile(times, 0.999) / 1000);
+    }
+
+    /**
+     * Returns a percentile of sorted values.
+     * @param sorted values in ascending order
+     * @param fraction percentile as a fraction, e.g. 0.99
+     * @return value at the percentile
+     */
+    private static double percentile(long[] sorted, double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) (fraction * sorted.length))];
+    }
+}
@@ -0,0 +1,193 @@
+package gameServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Compares the {@link WordTable} with a {@code HashMap<String, Integer>} counting the same words.
+ * <p>
+ * The vocabulary is made of the words of the test corpus topped up with random lower case words to the given
+ * number of distinct words, about that of the complete works of Shakespeare by default. Each structure is filled
+ * with every word of the vocabulary and the heap it holds afterwards is reported per distinct word. Then a stream
+ * of words drawn from the vocabulary, laid out as UTF-8 bytes the way an uploaded text is received, is looked up:
+ * in the table straight from the byte slices, in the map through a String decoded from every slice, and in the
+ * map through Strings made in advance, which leaves out the cost of making the key.
+ * <p>
+ * usage: {@code java -cp .:bench gameServer.WordTableBenchmark [distinct words] [lookups]}
+ */
+final class WordTableBenchmark {
+    /**
+     * Corpus whose words start the vocabulary.
+     */
+    private static final Path CORPUS = Path.of("test", "test.txt");
+    /**
+     * Sink of the looked up counts, so the lookups can't be optimized away.
+     */
+    private static long sink;
+
+    /**
+     * Runs the benchmark.
+     * @param args number of distinct words and number of timed lookups
+     * @throws Exception thrown if the corpus can't be read or the benchmark is interrupted
+     */
+    public static void main(String[] args) throws Exception {
+        int distinct = args.length > 0 ? Integer.parseInt(args[0]) : 30_000;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 10_000_000;
+        String[] vocabulary = vocabulary(distinct);
+
+        System.out.printf("%-16s %10s %16s%n", "structure", "words", "heap/word(B)");
+        memory("WordTable", vocabulary, false);
+        memory("HashMap", vocabulary, true);
+        WordTable table = new WordTable();
+        for (String word : vocabulary) {
+            byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+            table.add(bytes, 0, bytes.length);
+        }
+        table.trim();
+        System.out.printf("%-16s %10d %16.1f%n", "WordTable arrays", table.size(),
+                table.memoryBytes() / (double) table.size());
+
+        Map<String, Integer> map = new HashMap<>();
+        for (String word : vocabulary) {
+            map.merge(word, 1, Integer::sum);
+        }
+        Random random = new Random(42);
+        String[] words = new String[lookups];
+        int[] offsets = new int[lookups];
+        int[] lengths = new int[lookups];
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (int i = 0; i < lookups; i++) {
+            words[i] = vocabulary[random.nextInt(vocabulary.length)];
+            byte[] bytes = words[i].getBytes(StandardCharsets.UTF_8);
+            offsets[i] = stream.size();
+            lengths[i] = bytes.length;
+            stream.writeBytes(bytes);
+            stream.write(' ');
+        }
+        byte[] text = stream.toByteArray();
+
+        System.out.printf("%n%-22s %12s %14s%n", "lookup", "lookups", "Mlookups/s");
+        for (int round = 0; round < 3; round++) {
+            // the first round warms up the JIT
+            boolean print = round > 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                sink += table.count(text, offsets[i], lengths[i]);
+            }
+            report(print, "WordTable slice", lookups, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                sink += map.get(new String(text, offsets[i], lengths[i], StandardCharsets.UTF_8));
+            }
+            report(print, "HashMap slice", lookups, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                sink += map.get(words[i]);
+            }
+            report(print, "HashMap String", lookups, System.nanoTime() - start);
+        }
+        if (sink != 3L * 3 * lookups) {
+            throw new IllegalStateException("lookups missed words");
+        }
+    }
+
+    /**
+     * Makes the vocabulary, the lower cased words of the corpus topped up with random words.
+     * @param distinct number of distinct words
+     * @return distinct words
+     * @throws IOException thrown if the corpus can't be read
+     */
+    private static String[] vocabulary(int distinct) throws IOException {
+        Set<String> words = new LinkedHashSet<>();
+        String corpus = Files.readString(CORPUS, StandardCharsets.UTF_8).toLowerCase();
+        for (String word : corpus.split("[^\\p{L}\\p{N}_]+")) {
+            if (!word.isEmpty() && words.size() < distinct) {
+                words.add(word);
+            }
+        }
+        Random random = new Random(7);
+        StringBuilder word = new StringBuilder();
+        while (words.size() < distinct) {
+            word.setLength(0);
+            int length = 2 + random.nextInt(4) + random.nextInt(6);
+            for (int i = 0; i < length; i++) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            words.add(word.toString());
+        }
+        return words.toArray(new String[0]);
+    }
+
+    /**
+     * Fills a structure with the vocabulary and prints the heap it holds per distinct word.
+     * @param name name of the structure
+     * @param vocabulary distinct words
+     * @param hashMap true to fill a HashMap, false to fill a WordTable
+     * @throws InterruptedException thrown if the wait for a collection is interrupted
+     */
+    private static void memory(String name, String[] vocabulary, boolean hashMap) throws InterruptedException {
+        byte[][] encoded = new byte[vocabulary.length][];
+        for (int i = 0; i < vocabulary.length; i++) {
+            encoded[i] = vocabulary[i].getBytes(StandardCharsets.UTF_8);
+        }
+        long heapBefore = usedHeap();
+        Object structure;
+        if (hashMap) {
+            // the keys are decoded from the bytes, as they would be from an upload, so they are held by the map only
+            Map<String, Integer> map = new HashMap<>();
+            for (byte[] bytes : encoded) {
+                map.merge(new String(bytes, StandardCharsets.UTF_8), 1, Integer::sum);
+            }
+            structure = map;
+        } else {
+            WordTable table = new WordTable();
+            for (byte[] bytes : encoded) {
+                table.add(bytes, 0, bytes.length);
+            }
+            structure = table;
+        }
+        long heap = usedHeap() - heapBefore;
+        // the input was counted in the heap before, so it must not be collected before the heap after
+        Reference.reachabilityFence(encoded);
+        Reference.reachabilityFence(structure);
+        System.out.printf("%-16s %10d %16.1f%n", name, vocabulary.length, heap / (double) vocabulary.length);
+    }
+
+    /**
+     * Prints the throughput of a lookup loop.
+     * @param print false for a warm-up round, which isn't printed
+     * @param name name of the lookup
+     * @param lookups number of lookups
+     * @param nanos time taken in nanoseconds
+     */
+    private static void report(boolean print, String name, int lookups, long nanos) {
+        if (print) {
+            System.out.printf("%-22s %12d %14.1f%n", name, lookups, lookups * 1000.0 / nanos);
+        }
+    }
+
+    /**
+     * Returns the heap in use after a garbage collection.
+     * @return used heap in bytes
+     * @throws InterruptedException thrown if the wait for the collection is interrupted
+     */
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,148 @@
+package gameServer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control of the connections accepted by the game server.
+ * <p>
+ * It caps the number of connections served at the same time: a connection over the cap is answered
+ * with a single busy line and closed right away, before any thread, buffer or session is spent on it.
+ * The admitted connections are rate limited by a token bucket, so a reconnect storm is served at the
+ * configured accept rate with the configured burst; the connections above the rate wait their turn in
+ * the listen backlog instead of all being served at once.
+ */
+final class AdmissionControl {
+    /**
+     * Response to a connection over the cap, before it is closed.
+     */
+    private static final ByteBuffer BUSY =
+            ByteBuffer.wrap("Server busy, retry later.\n".getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+
+    /**
+     * Most connections served at the same time, or 0 if they are not limited.
+     */
+    private final int maxConnections;
+    /**
+     * Time in nanoseconds between two accept tokens, or 0 if the accept rate is not limited.
+     */
+    private final long tokenInterval;
+    /**
+     * Time in nanoseconds a connection may be accepted ahead of the accept rate, given by the burst.
+     */
+    private final long burstTolerance;
+    /**
+     * Counters of the accepted, rejected and queued connections.
+     */
+    private final ServerMetrics metrics;
+    /**
+     * Number of connections served.
+     */
+    private final AtomicInteger connections = new AtomicInteger();
+    /**
+     * Time in {@link System#nanoTime()} units the next token is due if the bucket is empty.
+     */
+    private long nextToken = System.nanoTime();
+
+    /**
+     * Constructor to create an AdmissionControl.
+     * @param maxConnections most connections served at the same time, or 0 not to limit them
+     * @param acceptRate most connections accepted per second, or 0 not to limit the rate
+     * @param acceptBurst most connections accepted at once above the rate
+     * @param metrics counters of the accepted, rejected and queued connections
+     */
+    AdmissionControl(int maxConnections, int acceptRate, int acceptBurst, ServerMetrics metrics) {
+        this.maxConnections = maxConnections;
+        this.tokenInterval = acceptRate > 0 ? TimeUnit.SECONDS.toNanos(1) / acceptRate : 0;
+        this.burstTolerance = tokenInterval * (acceptBurst - 1);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Admits an accepted connection if the server is below its connection cap.
+     * @return true if the connection is admitted, false if it has to be rejected as busy
+     */
+    boolean admit() {
+        while (true) {
+            int current = connections.get();
+            if (maxConnections > 0 && current >= maxConnections) {
+                metrics.connectionRejected();
+                return false;
+            }
+            if (connections.compareAndSet(current, current + 1)) {
+                metrics.connectionAccepted();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Takes an accept token for an admitted connection.
+     * The accept loop waits the returned time before serving the connection and accepting the next one.
+     * @return time in nanoseconds to wait for the token, 0 if it is available right away
+     */
+    synchronized long reserveToken() {
+        if (tokenInterval == 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        long due = nextToken - burstTolerance;
+        nextToken = Math.max(nextToken, now) + tokenInterval;
+        if (due - now <= 0) {
+            return 0;
+        }
+        metrics.connectionQueued();
+        return due - now;
+    }
+
+    /**
+     * Takes an accept token, waiting for it on the calling thread.
+     * @throws InterruptedException thrown if the thread is interrupted while waiting
+     */
+    void awaitToken() throws InterruptedException {
+        long wait = reserveToken();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * Notes that an admitted connection has been closed.
+     */
+    void release() {
+        connections.decrementAndGet();
+    }
+
+    /**
+     * Returns the number of connections served.
+     * @return number of open admitted connections
+     */
+    int connections() {
+        return connections.get();
+    }
+
+    /**
+     * Tells a connection over the connection cap that the server is busy and closes it.
+     * The accepted channel is still blocking, so the short line is written in one call.
+     * @param channel channel of the rejected connection
+     */
+    static void rejectBusy(SocketChannel channel) {
+        try (channel) {
+            channel.write(busyMessage());
+        } catch (IOException e) {
+            System.out.println("Exception caught " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the line sent to a rejected connection.
+     * @return encoded busy line, including the line terminator
+     */
+    static ByteBuffer busyMessage() {
+        return BUSY.duplicate();
+    }
+}
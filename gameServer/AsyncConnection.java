@@ -0,0 +1,381 @@
+package gameServer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * AsyncConnection supports interaction with a single player over an {@link AsynchronousSocketChannel}.
+ * <p>
+ * There is always one read outstanding; its completion handler frames the received bytes into commands with
+ * the shared {@link CommandDecoder} and dispatches them on the thread of the channel group that completed it.
+ * The reads of a connection complete one after the other, so its commands are dispatched in order.
+ * <p>
+ * Outgoing messages are queued in a bounded {@link OutboundQueue} and written with at most one write
+ * outstanding. The messages queued while a completion handler dispatches the commands of one read are
+ * written together at the end of the dispatch; a player too slow to keep its queue within bounds is evicted.
+ * <p>
+ * The reads and writes use direct buffers of the shared {@link BufferPool}, held only while the read or write
+ * is outstanding. Unlike a selector, an asynchronous channel can only wait for input with a read outstanding,
+ * so an idle connection still holds its read buffer.
+ */
+final class AsyncConnection implements PlayerConnection {
+    /**
+     * Connections with messages queued by the current thread's dispatch and not yet flushed,
+     * or no list if the current thread is not dispatching a command.
+     */
+    private static final ThreadLocal<List<AsyncConnection>> UNFLUSHED = new ThreadLocal<>();
+
+    /**
+     * Channel to the player.
+     */
+    private final AsynchronousSocketChannel channel;
+    /**
+     * Pool of the buffers the channel is read into and written from.
+     */
+    private final BufferPool pool;
+    /**
+     * Messages waiting to be written to the channel.
+     */
+    private final OutboundQueue outbound;
+    /**
+     * Counters of the work done by the server.
+     */
+    private final ServerMetrics metrics;
+    /**
+     * Connections the dispatch of this connection's commands has to flush at its end.
+     */
+    private final List<AsyncConnection> cycle = new ArrayList<>();
+    /**
+     * Flag set while a write is outstanding.
+     */
+    private final AtomicBoolean writing = new AtomicBoolean();
+    /**
+     * Flag to identify if the connection is in the unflushed list of a dispatch.
+     */
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    /**
+     * Flag set once the channel has been closed.
+     */
+    private final AtomicBoolean closed = new AtomicBoolean();
+    /**
+     * Buffer of the outstanding read.
+     */
+    private ByteBuffer readBuffer;
+    /**
+     * Bytes copied from the queued messages and not yet written, or null if there are none.
+     * It is only held while the writing flag is set.
+     */
+    private ByteBuffer writeBuffer;
+    /**
+     * Decoder framing the input from the player into commands.
+     */
+    private CommandDecoder decoder;
+    /**
+     * Session processing the commands of this connection.
+     */
+    private ConnectionHandler handler;
+    /**
+     * Flag set once the connection should be closed after the queued messages are written.
+     */
+    private volatile boolean closeRequested;
+    /**
+     * Flag set once the player has said goodbye, so closing the channel is not a disconnection.
+     */
+    private volatile boolean closedByPlayer;
+    /**
+     * Flag set once the connection has been evicted by a dispatch, which closes it at its end.
+     */
+    private volatile boolean evicted;
+
+    /**
+     * Handler of the completed reads.
+     */
+    private final CompletionHandler<Integer, Void> readCompleted = new CompletionHandler<>() {
+        public void completed(Integer read, Void attachment) {
+            onRead(read);
+        }
+
+        public void failed(Throwable exc, Void attachment) {
+            onRead(-1);
+        }
+    };
+
+    /**
+     * Handler of the completed writes.
+     */
+    private final CompletionHandler<Integer, Void> writeCompleted = new CompletionHandler<>() {
+        public void completed(Integer written, Void attachment) {
+            onWritten();
+        }
+
+        public void failed(Throwable exc, Void attachment) {
+            releaseWriteBuffer();
+            writing.set(false);
+            if (!closed.get()) {
+                System.out.println("Exception caught " + exc.getMessage());
+                closeNow();
+            }
+        }
+    };
+
+    /**
+     * Constructor to create an AsyncConnection.
+     * @param channel channel to the player
+     * @param pool pool of the buffers the channel is read into and written from
+     * @param outbound bounded queue of the messages waiting to be written
+     * @param metrics counters of the work done by the server
+     */
+    AsyncConnection(AsynchronousSocketChannel channel, BufferPool pool, OutboundQueue outbound,
+                    ServerMetrics metrics) {
+        this.channel = channel;
+        this.pool = pool;
+        this.outbound = outbound;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the session processing the commands of this connection and starts reading.
+     * @param handler session processing the commands
+     */
+    void start(ConnectionHandler handler) {
+        this.handler = handler;
+        this.decoder = new CommandDecoder(handler);
+        read();
+    }
+
+    /**
+     * Starts the next read into a pooled buffer.
+     */
+    private void read() {
+        readBuffer = pool.acquire();
+        channel.read(readBuffer, null, readCompleted);
+    }
+
+    /**
+     * Dispatches the commands of a completed read and starts the next read. The end of the channel,
+     * a failed read or a failed command is handled like the player closing the connection.
+     * @param read number of bytes read, or -1 if the channel is closed
+     */
+    private void onRead(int read) {
+        if (read < 0) {
+            pool.release(readBuffer);
+            readBuffer = null;
+            boolean disconnected = !closedByPlayer;
+            closeNow();
+            // the reads complete one after the other, so the decoder is only fed on this chain
+            decoder.abort();
+            if (disconnected) {
+                disconnectQuietly();
+            }
+            return;
+        }
+        UNFLUSHED.set(cycle);
+        try {
+            handler.onRead();
+            readBuffer.flip();
+            decoder.feed(readBuffer);
+        } catch (IOException e) {
+            // the player disconnection is handled below, once the responses of the dispatch are flushed
+            System.out.println("Exception caught " + e.getMessage());
+            closeNow();
+        } catch (RuntimeException e) {
+            // a failing command must only cost its own connection; it is disconnected below like on an IOException
+            e.printStackTrace();
+            closeNow();
+        } finally {
+            pool.release(readBuffer);
+            readBuffer = null;
+            UNFLUSHED.remove();
+            for (AsyncConnection connection : cycle) {
+                if (connection.evicted) {
+                    connection.closeNow();
+                } else {
+                    connection.flush();
+                }
+            }
+            cycle.clear();
+        }
+        if (!closed.get()) {
+            read();
+            return;
+        }
+        decoder.abort();
+        if (!closedByPlayer) {
+            // closed while dispatching, e.g. failed or evicted by its own responses, so no read is left to fail
+            disconnectQuietly();
+        }
+    }
+
+    /**
+     * Handles the player disconnection.
+     */
+    private void disconnectQuietly() {
+        try {
+            handler.onDisconnect();
+        } catch (IOException e) {
+            System.out.println("Exception caught " + e.getMessage());
+        } catch (RuntimeException e) {
+            // must not escape into the channel group's thread
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Queues a message for the player. It is written at the end of the current dispatch, or right away
+     * if the calling thread is not dispatching a command. It never blocks: if the player is too slow to keep
+     * its queue within bounds, the connection is evicted.
+     * @param message encoded message, including the line terminator
+     */
+    public void send(ByteBuffer message) {
+        if (closeRequested) {
+            return;
+        }
+        metrics.responseQueued();
+        if (!outbound.offer(message)) {
+            System.out.println("Disconnecting slow player with " + outbound.bytes() + " bytes waiting");
+            metrics.slowConsumerEvicted();
+            evict();
+            return;
+        }
+        List<AsyncConnection> connections = UNFLUSHED.get();
+        if (connections == null) {
+            flush();
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            connections.add(this);
+        }
+    }
+
+    /**
+     * Closes the connection once all the queued messages have been written.
+     */
+    public void close() {
+        closedByPlayer = true;
+        closeRequested = true;
+        decoder.stop();
+        flush();
+    }
+
+    /**
+     * Closes the connection of an idle or slow player, dropping the queued messages. The outstanding
+     * read fails and its completion handler handles the player disconnection. Evicted by a dispatch, e.g. by a
+     * broadcast that overflows its queue, the connection is only closed at the end of the dispatch, so the
+     * disconnection can't change the players of a game while the broadcast loops over them.
+     */
+    public void evict() {
+        closeRequested = true;
+        List<AsyncConnection> connections = UNFLUSHED.get();
+        if (connections == null) {
+            closeNow();
+            return;
+        }
+        evicted = true;
+        // added even if already scheduled, maybe by another thread's dispatch, which won't flush it any more
+        connections.add(this);
+    }
+
+    /**
+     * Checks if the oldest queued message has waited longer than the player is allowed to lag behind.
+     * @return true if the player is a slow consumer else false
+     */
+    public boolean isStale() {
+        return outbound.isStale();
+    }
+
+    /**
+     * Runs a task on the calling thread: the commands are dispatched on any thread of the channel group, and the
+     * messages the task queues are written right away.
+     * @param task task to be run
+     */
+    public void execute(Runnable task) {
+        task.run();
+    }
+
+    /**
+     * Starts writing the queued messages, unless a write is already outstanding or the connection is evicted.
+     */
+    private void flush() {
+        flushScheduled.set(false);
+        if (evicted) {
+            return;
+        }
+        if (writing.compareAndSet(false, true)) {
+            write();
+        }
+    }
+
+    /**
+     * Writes the next queued messages, several at a time copied into a pooled buffer, or gives up the write
+     * flag and the buffer once everything has been written.
+     */
+    private void write() {
+        while (true) {
+            if (closed.get()) {
+                releaseWriteBuffer();
+                writing.set(false);
+                return;
+            }
+            if (writeBuffer == null && !outbound.isEmpty()) {
+                writeBuffer = pool.acquire();
+            }
+            if (writeBuffer != null) {
+                outbound.drainTo(writeBuffer);
+                if (writeBuffer.position() > 0) {
+                    writeBuffer.flip();
+                    channel.write(writeBuffer, null, writeCompleted);
+                    return;
+                }
+                releaseWriteBuffer();
+            }
+            writing.set(false);
+            if (closeRequested) {
+                closeNow();
+                return;
+            }
+            // a message queued after the queue was found empty but before the flag was released
+            if (outbound.isEmpty() || !writing.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Keeps the bytes the channel didn't take and continues with the rest of the queued messages.
+     */
+    private void onWritten() {
+        metrics.flushed();
+        writeBuffer.compact();
+        write();
+    }
+
+    /**
+     * Returns the write buffer to the pool, if one is held.
+     */
+    private void releaseWriteBuffer() {
+        if (writeBuffer != null) {
+            pool.release(writeBuffer);
+            writeBuffer = null;
+        }
+    }
+
+    /**
+     * Closes the channel immediately and drops the queued messages.
+     */
+    private void closeNow() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        closeRequested = true;
+        outbound.clear();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        handler.onClose();
+    }
+}
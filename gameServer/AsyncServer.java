@@ -0,0 +1,215 @@
+package gameServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Completion handler based front end of the game server.
+ * <p>
+ * The connections are accepted by an {@link AsynchronousServerSocketChannel} and served by
+ * {@link AsyncConnection}s; all of them share one {@link AsynchronousChannelGroup} whose fixed pool of
+ * threads, one per core by default, runs the completion handlers that dispatch the commands. No thread
+ * is tied to a connection and there is no selector loop in the server's own code. With several listeners,
+ * each listening channel shares the port through SO_REUSEPORT and keeps its own accept outstanding.
+ */
+final class AsyncServer implements FrontEnd {
+    /**
+     * Game server owning the games and players.
+     */
+    private final GameServer gameServer;
+    /**
+     * Port number for the server to listen on.
+     */
+    private final int port;
+    /**
+     * Number of threads running the completion handlers.
+     */
+    private final int ioThreads;
+    /**
+     * Length of the queue of connections waiting to be accepted.
+     */
+    private final int backlog;
+    /**
+     * Number of channels listening on the port.
+     */
+    private final int listeners;
+    /**
+     * Group of the channels, with the threads running their completion handlers.
+     */
+    private AsynchronousChannelGroup group;
+    /**
+     * Setup to accept connections from players, one channel per listener.
+     */
+    private final List<AsynchronousServerSocketChannel> serverChannels = new CopyOnWriteArrayList<>();
+
+    /**
+     * Handler of the connections accepted by the listening channel given as attachment.
+     */
+    private final CompletionHandler<AsynchronousSocketChannel, AsynchronousServerSocketChannel> accepted =
+            new CompletionHandler<>() {
+        public void completed(AsynchronousSocketChannel channel, AsynchronousServerSocketChannel listener) {
+            AdmissionControl admission = gameServer.admission();
+            if (!admission.admit()) {
+                accept(listener);
+                rejectBusy(channel);
+                return;
+            }
+            long wait = admission.reserveToken();
+            if (wait > 0) {
+                // the next accept waits for the token too, without holding a thread of the group
+                gameServer.timers().schedule(() -> {
+                    accept(listener);
+                    serve(channel);
+                }, wait, TimeUnit.NANOSECONDS);
+            } else {
+                accept(listener);
+                serve(channel);
+            }
+        }
+
+        public void failed(Throwable exc, AsynchronousServerSocketChannel listener) {
+            if (listener.isOpen()) {
+                System.out.println("Exception caught " + exc.getMessage());
+                accept(listener);
+            }
+        }
+    };
+
+    /**
+     * Constructor to create an AsyncServer.
+     * @param gameServer game server owning the games and players
+     * @param port port number for the server to listen on
+     * @param ioThreads number of threads running the completion handlers
+     * @param backlog length of the queue of connections waiting to be accepted
+     * @param listeners number of channels listening on the port
+     */
+    AsyncServer(GameServer gameServer, int port, int ioThreads, int backlog, int listeners) {
+        this.gameServer = gameServer;
+        this.port = port;
+        this.ioThreads = ioThreads;
+        this.backlog = backlog;
+        this.listeners = listeners;
+    }
+
+    /**
+     * Starts accepting connections and waits until the server is closed.
+     */
+    public void run() {
+        try {
+            AtomicInteger threads = new AtomicInteger();
+            group = AsynchronousChannelGroup.withFixedThreadPool(ioThreads,
+                    task -> new Thread(task, "async-io-" + threads.getAndIncrement()));
+            AsynchronousServerSocketChannel first = openServerChannel(listeners > 1);
+            int count = GameServer.reusePortListeners(listeners, first.supportedOptions());
+            for (int i = 1; i < count; i++) {
+                accept(openServerChannel(true));
+            }
+            accept(first);
+            group.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } catch (IOException ioException) {
+            ioException.printStackTrace();
+            // the threads of the group would otherwise keep the JVM alive with nothing to serve
+            close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Opens a server channel listening on the port of the server.
+     * @param reusePort true to share the port with the other listeners through SO_REUSEPORT
+     * @return bound server channel
+     * @throws IOException thrown if the channel can't be bound
+     */
+    private AsynchronousServerSocketChannel openServerChannel(boolean reusePort) throws IOException {
+        AsynchronousServerSocketChannel listener = AsynchronousServerSocketChannel.open(group);
+        serverChannels.add(listener);
+        if (reusePort && listener.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+            listener.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        }
+        listener.bind(new InetSocketAddress(port), backlog);
+        return listener;
+    }
+
+    /**
+     * Accepts the next connection of a listener.
+     * @param listener channel to accept the connection from
+     */
+    private void accept(AsynchronousServerSocketChannel listener) {
+        listener.accept(listener, accepted);
+    }
+
+    /**
+     * Starts serving an admitted connection.
+     * @param channel channel of the connection
+     */
+    private void serve(AsynchronousSocketChannel channel) {
+        AsyncConnection connection = new AsyncConnection(channel, gameServer.bufferPool(), gameServer.newOutboundQueue(),
+                gameServer.metrics());
+        connection.start(gameServer.openSession(connection));
+    }
+
+    /**
+     * Tells a connection over the connection cap that the server is busy and closes it once the line is written.
+     * @param channel channel of the rejected connection
+     */
+    private static void rejectBusy(AsynchronousSocketChannel channel) {
+        channel.write(AdmissionControl.busyMessage(), null, new CompletionHandler<Integer, Void>() {
+            public void completed(Integer written, Void attachment) {
+                closeQuietly(channel);
+            }
+
+            public void failed(Throwable exc, Void attachment) {
+                closeQuietly(channel);
+            }
+        });
+    }
+
+    /**
+     * Closes a channel, ignoring the failure of a connection already lost.
+     * @param channel channel to be closed
+     */
+    private static void closeQuietly(AsynchronousSocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.out.println("Exception caught " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops accepting connections; the channel group keeps serving the open connections.
+     */
+    public void stopAccepting() {
+        try {
+            for (AsynchronousServerSocketChannel serverChannel : serverChannels) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops accepting connections and closes all the connections with the channel group.
+     */
+    public void close() {
+        stopAccepting();
+        try {
+            if (group != null) {
+                group.shutdownNow();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package gameServer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Pool of direct byte buffers for the reads and writes of the non-blocking connections.
+ * <p>
+ * The buffers are sliced out of large direct slabs, so the pool costs a few native allocations instead
+ * of one per buffer, and the channels read and write them without the copy through a temporary direct
+ * buffer that heap buffers need. A connection only holds a buffer while it has I/O pending and returns it
+ * right after, so an idle connection doesn't hold any. The pool grows by a slab whenever all its buffers are
+ * in use and keeps them for the next peak.
+ */
+final class BufferPool {
+    /**
+     * Number of buffers sliced out of one slab.
+     */
+    private static final int BUFFERS_PER_SLAB = 64;
+
+    /**
+     * Capacity in bytes of every buffer.
+     */
+    private final int bufferSize;
+    /**
+     * Buffers ready to be taken, the most recently returned first.
+     */
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+    /**
+     * Number of buffers sliced out of the slabs.
+     */
+    private int allocated;
+
+    /**
+     * Constructor to create a BufferPool.
+     * @param bufferSize capacity in bytes of every buffer
+     */
+    BufferPool(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Takes a buffer from the pool, growing the pool by a slab if all the buffers are in use.
+     * @return empty buffer of {@link #bufferSize()} bytes, to be returned with {@link #release(ByteBuffer)}
+     */
+    synchronized ByteBuffer acquire() {
+        if (free.isEmpty()) {
+            ByteBuffer slab = ByteBuffer.allocateDirect(bufferSize * BUFFERS_PER_SLAB);
+            for (int i = 0; i < BUFFERS_PER_SLAB; i++) {
+                free.push(slab.slice(i * bufferSize, bufferSize));
+            }
+            allocated += BUFFERS_PER_SLAB;
+        }
+        return free.pop().clear();
+    }
+
+    /**
+     * Returns a buffer taken from the pool. The buffer must not be used afterwards.
+     * @param buffer buffer to be returned
+     */
+    synchronized void release(ByteBuffer buffer) {
+        free.push(buffer);
+    }
+
+    /**
+     * Returns the capacity of the buffers of the pool.
+     * @return capacity in bytes of every buffer
+     */
+    int bufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Returns the number of buffers taken and not returned yet.
+     * @return number of buffers in use
+     */
+    synchronized int inUse() {
+        return allocated - free.size();
+    }
+
+    /**
+     * Returns the number of buffers of the pool, in use or not.
+     * @return number of buffers allocated
+     */
+    synchronized int allocated() {
+        return allocated;
+    }
+
+    /**
+     * Formats the occupancy of the pool for the log.
+     * @return occupancy as name=value pairs
+     */
+    public synchronized String toString() {
+        return "buffersInUse=" + (allocated - free.size()) + " buffersAllocated=" + allocated
+                + " bufferPoolBytes=" + (long) allocated * bufferSize;
+    }
+}
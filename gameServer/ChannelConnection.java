@@ -0,0 +1,320 @@
+package gameServer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * ChannelConnection supports non-blocking interaction with a single player over a {@link SocketChannel}.
+ * <p>
+ * It frames the incoming bytes into commands with the same {@link CommandDecoder} as the blocking
+ * {@code GameThread}, and queues outgoing messages in a bounded {@link OutboundQueue} until the channel can
+ * take them. A player whose queue grows over its bounds is disconnected instead of buffering without limit.
+ * The messages queued while the reactor dispatches the commands of one select cycle are written
+ * together at the end of the cycle, or as soon as {@link #FLUSH_THRESHOLD} bytes are queued.
+ * <p>
+ * The channel is read into and written from direct buffers of the shared {@link BufferPool}. A read buffer is
+ * only held while the channel is being read, and a write buffer while written bytes are waiting for the channel
+ * to take them, so an idle connection holds no buffer at all.
+ * All reads and writes happen on the thread of the owning {@link Reactor};
+ * {@link #send(ByteBuffer)} and {@link #close()} may be called from any thread.
+ */
+final class ChannelConnection implements PlayerConnection {
+    /**
+     * Most reads of the channel per select cycle, so one pipelining player can't hold up the others.
+     */
+    private static final int MAX_READS_PER_CYCLE = 16;
+    /**
+     * Number of queued bytes that are written without waiting for the end of the dispatch cycle.
+     */
+    private static final int FLUSH_THRESHOLD = 64 * 1024;
+
+    /**
+     * Event loop owning the channel.
+     */
+    private final Reactor reactor;
+    /**
+     * Channel to the player.
+     */
+    private final SocketChannel channel;
+    /**
+     * Registration of the channel with the reactor's selector.
+     */
+    private final SelectionKey key;
+    /**
+     * Pool of the buffers the channel is read into and written from.
+     */
+    private final BufferPool pool;
+    /**
+     * Decoder framing the input from the player into commands.
+     */
+    private CommandDecoder decoder;
+    /**
+     * Messages waiting to be written to the channel.
+     */
+    private final OutboundQueue outbound;
+    /**
+     * Flag set while a flush of the queued messages is scheduled on the reactor.
+     */
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    /**
+     * Bytes copied from the queued messages and not yet taken by the channel, or null if there are none.
+     */
+    private ByteBuffer writeBuffer;
+    /**
+     * Counters of the work done by the server.
+     */
+    private final ServerMetrics metrics;
+    /**
+     * Session processing the commands of this connection.
+     */
+    private ConnectionHandler handler;
+    /**
+     * Flag set once the connection should be closed after the queued messages are written.
+     */
+    private volatile boolean closeRequested;
+    /**
+     * Flag to identify if the channel has been closed.
+     */
+    private boolean closed;
+
+    /**
+     * Constructor to create a ChannelConnection.
+     * @param reactor event loop owning the channel
+     * @param channel channel to the player
+     * @param key registration of the channel with the reactor's selector
+     * @param pool pool of the buffers the channel is read into and written from
+     * @param outbound bounded queue of the messages waiting to be written
+     * @param metrics counters of the work done by the server
+     */
+    ChannelConnection(Reactor reactor, SocketChannel channel, SelectionKey key, BufferPool pool,
+                      OutboundQueue outbound, ServerMetrics metrics) {
+        this.reactor = reactor;
+        this.channel = channel;
+        this.key = key;
+        this.pool = pool;
+        this.outbound = outbound;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the session processing the commands of this connection.
+     * @param handler session processing the commands
+     */
+    void setHandler(ConnectionHandler handler) {
+        this.handler = handler;
+        this.decoder = new CommandDecoder(handler);
+    }
+
+    /**
+     * Reads what is available on the channel and dispatches every complete command in order,
+     * including the ones pipelined by the player; their responses are written together at the end of the cycle.
+     * A failed read is handled like the player closing the connection.
+     * @throws IOException thrown if there is an error in sending a response
+     */
+    void onReadable() throws IOException {
+        ByteBuffer readBuffer = pool.acquire();
+        try {
+            for (int i = 0; i < MAX_READS_PER_CYCLE && !closed; i++) {
+                int read;
+                try {
+                    read = channel.read(readBuffer);
+                } catch (IOException e) {
+                    read = -1;
+                }
+                if (read < 0) {
+                    closeNow();
+                    handler.onDisconnect();
+                    return;
+                }
+                if (read == 0) {
+                    return;
+                }
+                handler.onRead();
+                readBuffer.flip();
+                decoder.feed(readBuffer);
+                readBuffer.clear();
+                if (read < readBuffer.capacity()) {
+                    // the channel has been drained
+                    return;
+                }
+            }
+        } finally {
+            pool.release(readBuffer);
+        }
+    }
+
+    /**
+     * Writes the queued messages once the channel can take more bytes.
+     * @throws IOException thrown if there is an error in writing the channel
+     */
+    void onWritable() throws IOException {
+        flush();
+    }
+
+    /**
+     * Queues a message for the player. The message is written by the reactor thread at the end of
+     * its current dispatch cycle, or right away once enough bytes are queued. It never blocks: if the player
+     * is too slow to keep its queue within bounds, the connection is evicted.
+     * @param message encoded message, including the line terminator
+     */
+    public void send(ByteBuffer message) {
+        if (closeRequested) {
+            return;
+        }
+        metrics.responseQueued();
+        if (!outbound.offer(message)) {
+            System.out.println("Disconnecting slow player with " + outbound.bytes() + " bytes waiting");
+            metrics.slowConsumerEvicted();
+            evict();
+            return;
+        }
+        if (outbound.bytes() >= FLUSH_THRESHOLD) {
+            reactor.execute(this::flushQuietly);
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            reactor.executeLater(this::flushQuietly);
+        }
+    }
+
+    /**
+     * Closes the connection once all the queued messages have been written.
+     */
+    public void close() {
+        closeRequested = true;
+        decoder.stop();
+        reactor.execute(this::flushQuietly);
+    }
+
+    /**
+     * Closes the connection of an idle or slow player, dropping the queued messages, and handles
+     * the player disconnection on the reactor thread once the current command has completed.
+     */
+    public void evict() {
+        closeRequested = true;
+        // deferred even on the reactor thread, so a broadcast evicting a player finishes its loop first
+        reactor.executeLater(this::closeAndDisconnect);
+    }
+
+    /**
+     * Closes the channel immediately and handles the player disconnection, unless the channel is already closed.
+     * It is called on the reactor thread, e.g. after a command failed.
+     */
+    void closeAndDisconnect() {
+        if (!closed) {
+            closeNow();
+            disconnectQuietly();
+        }
+    }
+
+    /**
+     * Checks if the oldest queued message has waited longer than the player is allowed to lag behind.
+     * @return true if the player is a slow consumer else false
+     */
+    public boolean isStale() {
+        return outbound.isStale();
+    }
+
+    /**
+     * Runs a task on the reactor thread, after the keys it selected so far have been processed.
+     * @param task task to be run
+     */
+    public void execute(Runnable task) {
+        reactor.executeLater(task);
+    }
+
+    /**
+     * Writes as many queued messages as the channel takes, several at a time copied into a pooled buffer,
+     * and waits for OP_WRITE for the rest. The buffer is kept only while the channel hasn't taken all its bytes.
+     * @throws IOException thrown if there is an error in writing the channel
+     */
+    private void flush() throws IOException {
+        flushScheduled.set(false);
+        if (closed) {
+            return;
+        }
+        while (writeBuffer != null || !outbound.isEmpty()) {
+            if (writeBuffer == null) {
+                writeBuffer = pool.acquire();
+            }
+            outbound.drainTo(writeBuffer);
+            writeBuffer.flip();
+            channel.write(writeBuffer);
+            metrics.flushed();
+            if (writeBuffer.hasRemaining()) {
+                writeBuffer.compact();
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                return;
+            }
+            writeBuffer.clear();
+            if (outbound.isEmpty()) {
+                releaseWriteBuffer();
+            }
+        }
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        if (closeRequested) {
+            closeNow();
+        }
+    }
+
+    /**
+     * Writes the queued messages. If the channel fails, the connection is closed and the
+     * player disconnection is handled once the current command has completed.
+     */
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            System.out.println("Exception caught " + e.getMessage());
+            closeNow();
+            reactor.executeLater(this::disconnectQuietly);
+        }
+    }
+
+    /**
+     * Handles the player disconnection after the channel failed.
+     */
+    private void disconnectQuietly() {
+        try {
+            handler.onDisconnect();
+        } catch (IOException e) {
+            System.out.println("Exception caught " + e.getMessage());
+        } catch (RuntimeException e) {
+            // must not escape into the event loop
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Closes the channel immediately and drops the queued messages.
+     */
+    void closeNow() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        closeRequested = true;
+        outbound.clear();
+        releaseWriteBuffer();
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        // always called on the reactor thread, which feeds the decoder
+        decoder.abort();
+        handler.onClose();
+    }
+
+    /**
+     * Returns the write buffer to the pool, if one is held.
+     */
+    private void releaseWriteBuffer() {
+        if (writeBuffer != null) {
+            pool.release(writeBuffer);
+            writeBuffer = null;
+        }
+    }
+}
@@ -0,0 +1,635 @@
+package gameServer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * CommandDecoder frames the bytes received from a player into commands.
+ * <p>
+ * Commands are newline terminated lines, except for the payload of FILE_UPLOAD: once the header
+ * {@code FILE_UPLOAD <tag> <name> <size>} and the separator after it have been received, exactly
+ * {@code <size>} bytes are streamed to the {@link UploadSink} returned by the handler, chunk by chunk,
+ * and the rest of the upload line is skipped. A declared size of 0 streams the payload up to the end
+ * of the line, the way older clients send it. The payload is therefore never held as one line.
+ * {@code FILE_UPLOAD_DEFLATE} and {@code FILE_UPLOAD_GZIP} have the same header and a compressed payload,
+ * streamed the same way; the handler's sink inflates it.
+ * <p>
+ * A player saying {@code HELLO <username> BINARY} switches the rest of its input to length-prefixed binary
+ * frames, which are decoded without scanning for separators or decoding the command names: every frame is
+ * the varint length of the rest of the frame, a one-byte opcode and the fields of the command. A field is
+ * the varint length of its UTF-8 bytes followed by the bytes, except for the guess of WORD_COUNT, which is a
+ * zigzag varint. The fields of FILE_UPLOAD are the game tag and the file name; the rest of its frame is the
+ * raw payload, streamed to the {@link UploadSink} like a text upload. The decoded commands are handed to the
+ * handler as the same tokens as their text form, so both protocols share the command handlers; the
+ * responses are text lines in both protocols.
+ * <p>
+ * The decoder is fed by a single thread, the one reading the connection.
+ */
+final class CommandDecoder {
+    /**
+     * Longest command line accepted. A longer line is discarded and reported to the handler
+     * as an empty, invalid command.
+     */
+    static final int MAX_LINE_BYTES = 64 * 1024;
+    /**
+     * Name of the upload command whose payload is a zlib compressed deflate stream.
+     */
+    static final String FILE_UPLOAD_DEFLATE = "FILE_UPLOAD_DEFLATE";
+    /**
+     * Name of the upload command whose payload is gzip compressed.
+     */
+    static final String FILE_UPLOAD_GZIP = "FILE_UPLOAD_GZIP";
+    /**
+     * Names of the commands whose payload is streamed.
+     */
+    private static final byte[][] UPLOAD_COMMANDS = {"FILE_UPLOAD".getBytes(StandardCharsets.US_ASCII),
+            FILE_UPLOAD_DEFLATE.getBytes(StandardCharsets.US_ASCII), FILE_UPLOAD_GZIP.getBytes(StandardCharsets.US_ASCII)};
+    /**
+     * Number of tokens in a FILE_UPLOAD header, including the command name.
+     */
+    private static final int UPLOAD_HEADER_TOKENS = 4;
+    /**
+     * Names of the commands of the binary protocol, indexed by their opcode.
+     */
+    static final String[] OPCODES = {null, "HELLO", "NEW_GAME", "CLOSE", "JOIN_GAME", "START_GAME", "FILE_UPLOAD",
+            "RANDOM_WORD", "WORD_COUNT", "RESTART", "GOODBYE", "PING", FILE_UPLOAD_DEFLATE, FILE_UPLOAD_GZIP};
+    /**
+     * Opcodes of the commands whose payload is streamed.
+     */
+    static final byte OP_FILE_UPLOAD = 6, OP_FILE_UPLOAD_DEFLATE = 12, OP_FILE_UPLOAD_GZIP = 13;
+    /**
+     * Opcode of the command whose guess is a number.
+     */
+    private static final byte OP_WORD_COUNT = 8;
+    /**
+     * Most bytes of a frame length varint, keeping the length within a long.
+     */
+    private static final int MAX_LENGTH_VARINT_BYTES = 9;
+
+    /**
+     * The enum represents what the next bytes received are.
+     */
+    private enum State {
+        /**
+         * Bytes of a command line.
+         */
+        LINE,
+        /**
+         * Bytes of an upload payload of declared size.
+         */
+        BODY,
+        /**
+         * Bytes of an upload payload ending with the line.
+         */
+        BODY_TO_END_OF_LINE,
+        /**
+         * Bytes to be skipped up to the end of the line.
+         */
+        SKIP_LINE,
+        /**
+         * Bytes of the length of a binary frame.
+         */
+        FRAME_LENGTH,
+        /**
+         * Bytes of a binary frame, up to the end of the frame or of an upload header.
+         */
+        FRAME,
+        /**
+         * Bytes of a binary frame to be skipped.
+         */
+        SKIP_FRAME
+    }
+
+    /**
+     * Session the decoded commands are dispatched to.
+     */
+    private final ConnectionHandler handler;
+    /**
+     * What the next bytes received are.
+     */
+    private State state = State.LINE;
+    /**
+     * Bytes of the command line received so far.
+     */
+    private byte[] line = new byte[128];
+    /**
+     * Number of valid bytes in {@link #line}.
+     */
+    private int lineLength;
+    /**
+     * Number of tokens started in the current line.
+     */
+    private int tokens;
+    /**
+     * Flag to identify if the last byte of the line belongs to a token.
+     */
+    private boolean inToken;
+    /**
+     * Flag to identify if the current line is a FILE_UPLOAD command or one of its compressed variants.
+     */
+    private boolean upload;
+    /**
+     * Number of payload bytes still to be received.
+     */
+    private long remaining;
+    /**
+     * Receiver of the current payload, or null if the payload is discarded.
+     */
+    private UploadSink sink;
+    /**
+     * Flag set once the player negotiated the binary protocol.
+     */
+    private boolean binary;
+    /**
+     * Length of the binary frame decoded so far, or number of bytes of the current frame
+     * still to be received.
+     */
+    private long frameRemaining;
+    /**
+     * Number of bytes of the frame length received so far.
+     */
+    private int lengthBytes;
+    /**
+     * Offset in {@link #line} of the next field of the frame being parsed.
+     */
+    private int fieldOffset;
+    /**
+     * Flag set once no more commands should be dispatched.
+     */
+    private volatile boolean stopped;
+    /**
+     * Flag set once the connection is closed, so no upload is started any more.
+     */
+    private boolean aborted;
+
+    /**
+     * Constructor to create a CommandDecoder.
+     * @param handler session the decoded commands are dispatched to
+     */
+    CommandDecoder(ConnectionHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Decodes the received bytes and dispatches every complete command to the handler.
+     * @param in received bytes between the buffer's position and limit; all of them are consumed
+     * @throws IOException thrown if there is an error in sending the responses to the players
+     */
+    void feed(ByteBuffer in) throws IOException {
+        while (in.hasRemaining() && !stopped) {
+            switch (state) {
+                case LINE:
+                    readLine(in);
+                    break;
+                case BODY:
+                    readBody(in);
+                    break;
+                case BODY_TO_END_OF_LINE:
+                    readBodyToEndOfLine(in);
+                    break;
+                case SKIP_LINE:
+                    skipLine(in);
+                    break;
+                case FRAME_LENGTH:
+                    readFrameLength(in);
+                    break;
+                case FRAME:
+                    readFrame(in);
+                    break;
+                case SKIP_FRAME:
+                    skipFrame(in);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Stops dispatching commands, e.g. after the player said GOODBYE.
+     */
+    void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Stops decoding for good once the connection is closed, dropping the upload whose payload is being streamed
+     * in, if any. It must be called on the thread feeding the decoder, after the last bytes are fed.
+     */
+    void abort() {
+        stopped = true;
+        aborted = true;
+        UploadSink aborted = sink;
+        sink = null;
+        if (aborted != null) {
+            aborted.abort();
+        }
+    }
+
+    /**
+     * Reads the bytes of a command line up to the line terminator or the end of an upload header.
+     * @param in received bytes
+     * @throws IOException thrown if there is an error in sending the responses to the players
+     */
+    private void readLine(ByteBuffer in) throws IOException {
+        while (in.hasRemaining()) {
+            byte b = in.get();
+            if (b == '\n') {
+                dispatchLine();
+                return;
+            }
+            if (lineLength == MAX_LINE_BYTES) {
+                resetLine();
+                state = State.SKIP_LINE;
+                handler.onLine("");
+                return;
+            }
+            ensureCapacity(lineLength + 1);
+            line[lineLength++] = b;
+            if (isSeparator(b)) {
+                if (inToken) {
+                    inToken = false;
+                    if (tokens == 1) {
+                        upload = isUploadCommand(lineLength - 1);
+                    } else if (upload && tokens == UPLOAD_HEADER_TOKENS) {
+                        startUpload();
+                        return;
+                    }
+                }
+            } else if (b != '\r' && !inToken) {
+                inToken = true;
+                tokens++;
+            }
+        }
+    }
+
+    /**
+     * Dispatches the command line received so far, without its line terminator.
+     * @throws IOException thrown if there is an error in sending the responses to the players
+     */
+    private void dispatchLine() throws IOException {
+        int length = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+        String command = new String(line, 0, length, StandardCharsets.UTF_8);
+        resetLine();
+        handler.onLine(command);
+        if (!binary && handler.isBinary()) {
+            binary = true;
+            state = State.FRAME_LENGTH;
+        }
+    }
+
+    /**
+     * Hands the complete upload header to the handler and prepares for the payload.
+     * @throws IOException thrown if there is an error in sending the responses to the players
+     */
+    private void startUpload() throws IOException {
+        String[] header = new String(line, 0, lineLength, StandardCharsets.UTF_8).trim().split("\\s+");
+        resetLine();
+        long size = parseSize(header[UPLOAD_HEADER_TOKENS - 1]);
+        sink = openUpload(header);
+        if (size < 0) {
+            sink = null;
+            state = State.SKIP_LINE;
+        } else if (size == 0) {
+            state = State.BODY_TO_END_OF_LINE;
+        } else {
+            remaining = size;
+            state = State.BODY;
+        }
+    }
+
+    /**
+     * Streams the payload of declared size.
+     * @param in received bytes
+     * @throws IOException thrown if the payload can't be consumed or the upload can't be completed
+     */
+    private void readBody(ByteBuffer in) throws IOException {
+        int length = (int) Math.min(remaining, in.remaining());
+        if (sink != null) {
+            sink.write(in.slice(in.position(), length));
+        }
+        in.position(in.position() + length);
+        remaining -= length;
+        if (remaining == 0) {
+            state = binary ? State.FRAME_LENGTH : State.SKIP_LINE;
+            finishUpload();
+        }
+    }
+
+    /**
+     * Streams the payload up to the end of the line.
+     * @param in received bytes
+     * @throws IOException thrown if the payload can't be consumed or the upload can't be completed
+     */
+    private void readBodyToEndOfLine(ByteBuffer in) throws IOException {
+        int end = indexOfNewline(in);
+        int length = (end < 0 ? in.limit() : end) - in.position();
+        if (sink != null) {
+            sink.write(in.slice(in.position(), length));
+        }
+        in.position(in.position() + length);
+        if (end >= 0) {
+            in.get();
+            state = State.LINE;
+            finishUpload();
+        }
+    }
+
+    /**
+     * Skips the received bytes up to and including the line terminator.
+     * @param in received bytes
+     */
+    private void skipLine(ByteBuffer in) {
+        int end = indexOfNewline(in);
+        if (end < 0) {
+            in.position(in.limit());
+        } else {
+            in.position(end + 1);
+            state = State.LINE;
+        }
+    }
+
+    /**
+     * Reads the varint length of the next binary frame.
+     * @param in received bytes
+     * @throws IOException thrown if there is an error in sending the responses to the players
+     */
+    private void readFrameLength(ByteBuffer in) throws IOException {
+        while (in.hasRemaining()) {
+            byte b = in.get();
+            frameRemaining |= (long) (b & 0x7F) << (7 * lengthBytes++);
+            if (b >= 0) {
+                long length = frameRemaining;
+                lengthBytes = 0;
+                if (length == 0) {
+                    handler.onLine("");
+                } else {
+                    frameRemaining = length;
+                    state = State.FRAME;
+                }
+                return;
+            }
+            if (lengthBytes == MAX_LENGTH_VARINT_BYTES) {
+                // the frames can't be told apart any more, so the rest of the input is ignored
+                handler.onLine("");
+                stop();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads the bytes of a binary frame, up to the end of the frame or of the header of an upload.
+     * A frame too long to be held is discarded and reported to the handler as an empty, invalid command.
+     * @param in received bytes
+     * @throws IOException thrown if there is an error in sending the responses to the players
+     */
+    private void readFrame(ByteBuffer in) throws IOException {
+        int length = (int) Math.min(Math.min(in.remaining(), frameRemaining), MAX_LINE_BYTES - lineLength);
+        ensureCapacity(lineLength + length);
+        in.get(line, lineLength, length);
+        lineLength += length;
+        frameRemaining -= length;
+        if (line[0] == OP_FILE_UPLOAD || line[0] == OP_FILE_UPLOAD_DEFLATE || line[0] == OP_FILE_UPLOAD_GZIP) {
+            String[] header = parseUploadHeader();
+            if (header != null) {
+                startBinaryUpload(header);
+                return;
+            }
+        } else if (frameRemaining == 0) {
+            dispatchFrame();
+            return;
+        }
+        if (frameRemaining == 0 || lineLength == MAX_LINE_BYTES) {
+            resetLine();
+            state = frameRemaining == 0 ? State.FRAME_LENGTH : State.SKIP_FRAME;
+            handler.onLine("");
+        }
+    }
+
+    /**
+     * Skips the rest of a discarded binary frame.
+     * @param in received bytes
+     */
+    private void skipFrame(ByteBuffer in) {
+        int length = (int) Math.min(in.remaining(), frameRemaining);
+        in.position(in.position() + length);
+        frameRemaining -= length;
+        if (frameRemaining == 0) {
+            state = State.FRAME_LENGTH;
+        }
+    }
+
+    /**
+     * Decodes the complete binary frame received so far and dispatches its command.
+     * @throws IOException thrown if there is an error in sending the responses to the players
+     */
+    private void dispatchFrame() throws IOException {
+        int opcode = line[0];
+        List<String> command = new ArrayList<>();
+        if (opcode > 0 && opcode < OPCODES.length) {
+            command.add(OPCODES[opcode]);
+            fieldOffset = 1;
+            while (fieldOffset < lineLength) {
+                String field = opcode == OP_WORD_COUNT && command.size() == 2 ? parseNumber() : parseString();
+                if (field == null) {
+                    command.clear();
+                    break;
+                }
+                command.add(field);
+            }
+        }
+        resetLine();
+        state = State.FRAME_LENGTH;
+        if (command.isEmpty()) {
+            handler.onLine("");
+        } else {
+            handler.onCommand(command.toArray(new String[0]));
+        }
+    }
+
+    /**
+     * Parses the game tag and the file name of a binary FILE_UPLOAD from the bytes of the frame received so far.
+     * @return the upload header with the size of the payload, or null if the fields are not complete yet
+     */
+    private String[] parseUploadHeader() {
+        fieldOffset = 1;
+        String tag = parseString();
+        String fileName = tag == null ? null : parseString();
+        if (fileName == null) {
+            return null;
+        }
+        long size = frameRemaining + lineLength - fieldOffset;
+        return new String[] {OPCODES[line[0]], tag, fileName, Long.toString(size)};
+    }
+
+    /**
+     * Hands the upload header to the handler and streams the payload received with it.
+     * @param header the command name, game tag, file name and size of the payload
+     * @throws IOException thrown if the payload can't be consumed or the upload can't be completed
+     */
+    private void startBinaryUpload(String[] header) throws IOException {
+        ByteBuffer received = ByteBuffer.wrap(line, fieldOffset, lineLength - fieldOffset);
+        resetLine();
+        sink = openUpload(header);
+        if (sink != null && received.hasRemaining()) {
+            sink.write(received);
+        }
+        remaining = frameRemaining;
+        frameRemaining = 0;
+        if (remaining == 0) {
+            state = State.FRAME_LENGTH;
+            finishUpload();
+        } else {
+            state = State.BODY;
+        }
+    }
+
+    /**
+     * Parses the next string field of the frame.
+     * @return the field, or null if it goes past the bytes received
+     */
+    private String parseString() {
+        long length = parseVarint();
+        if (length < 0 || length > lineLength - fieldOffset) {
+            return null;
+        }
+        String field = new String(line, fieldOffset, (int) length, StandardCharsets.UTF_8);
+        fieldOffset += (int) length;
+        return field;
+    }
+
+    /**
+     * Parses the next zigzag encoded number field of the frame.
+     * @return the number in decimal, the way it is sent in the text protocol, or null if it goes past the bytes received
+     */
+    private String parseNumber() {
+        long zigzag = parseVarint();
+        if (zigzag < 0) {
+            return null;
+        }
+        return Integer.toString((int) (zigzag >>> 1) ^ -(int) (zigzag & 1));
+    }
+
+    /**
+     * Parses the next varint of the frame, of at most 32 bits.
+     * @return the unsigned value, or -1 if it goes past the bytes received or doesn't fit in 32 bits
+     */
+    private long parseVarint() {
+        long value = 0;
+        for (int shift = 0; shift < 35 && fieldOffset < lineLength; shift += 7) {
+            byte b = line[fieldOffset++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value <= 0xFFFFFFFFL ? value : -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Hands an upload header to the handler.
+     * @param header the command name, game tag, file name and size of the payload
+     * @return receiver of the payload, or null if the payload is discarded
+     * @throws IOException thrown if there is an error in sending the responses to the players
+     */
+    private UploadSink openUpload(String[] header) throws IOException {
+        UploadSink opened = handler.onUpload(header);
+        if (opened != null && aborted) {
+            // the connection was closed by the responses to the header
+            opened.abort();
+            return null;
+        }
+        return opened;
+    }
+
+    /**
+     * Completes the current upload, if its payload is not discarded.
+     * @throws IOException thrown if there is an error in sending the responses to the players
+     */
+    private void finishUpload() throws IOException {
+        UploadSink finished = sink;
+        sink = null;
+        if (finished != null) {
+            finished.finish();
+        }
+    }
+
+    /**
+     * Clears the command line received so far.
+     */
+    private void resetLine() {
+        lineLength = 0;
+        tokens = 0;
+        inToken = false;
+        upload = false;
+        if (line.length > 1024) {
+            line = new byte[128];
+        }
+    }
+
+    /**
+     * Grows the buffer of the command line to hold the given number of bytes, up to {@link #MAX_LINE_BYTES}.
+     * @param capacity number of bytes to be held
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > line.length) {
+            byte[] grown = new byte[Math.min(Math.max(line.length * 2, capacity), MAX_LINE_BYTES)];
+            System.arraycopy(line, 0, grown, 0, lineLength);
+            line = grown;
+        }
+    }
+
+    /**
+     * Checks if the first token of the command line is the name of an upload command.
+     * @param length length of the first token
+     * @return true if it is else false
+     */
+    private boolean isUploadCommand(int length) {
+        for (byte[] command : UPLOAD_COMMANDS) {
+            if (Arrays.equals(line, 0, length, command, 0, command.length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the next line terminator in the received bytes.
+     * @param in received bytes
+     * @return absolute index of the line terminator, or -1 if there is none
+     */
+    private static int indexOfNewline(ByteBuffer in) {
+        for (int i = in.position(); i < in.limit(); i++) {
+            if (in.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks if the byte separates the tokens of an upload header.
+     * @param b byte to be checked
+     * @return true for a space, tab, vertical tab or form feed else false
+     */
+    private static boolean isSeparator(byte b) {
+        return b == ' ' || b == '\t' || b == 0x0B || b == '\f';
+    }
+
+    /**
+     * Parses the declared size of an upload.
+     * @param size size token of the header
+     * @return declared size in bytes, or -1 if it is not a non-negative number
+     */
+    static long parseSize(String size) {
+        try {
+            long parsed = Long.parseLong(size);
+            return parsed < 0 ? -1 : parsed;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package gameServer;
+
+import java.io.IOException;
+
+/**
+ * The interface represents the contract between a connection and the player session processing its commands.
+ * <p>
+ * The connection takes care of reading and framing with a {@link CommandDecoder}; the handler is called
+ * on the thread reading the connection once per complete command.
+ */
+interface ConnectionHandler {
+
+    /**
+     * Notes that bytes have been received from the player, before they are decoded.
+     * Any input, including a partial command or upload payload, counts as activity of the connection.
+     */
+    void onRead();
+
+    /**
+     * Handles one complete command line received from the player.
+     * @param line command line without the line terminator
+     * @throws IOException thrown if there is an error in sending the response to the player
+     */
+    void onLine(String line) throws IOException;
+
+    /**
+     * Handles one complete command received from the player in a binary frame.
+     * @param command the command name and its arguments, the same tokens as in the text form of the command
+     * @throws IOException thrown if there is an error in sending the response to the player
+     */
+    void onCommand(String[] command) throws IOException;
+
+    /**
+     * Checks if the player negotiated the binary protocol. The decoder checks it after every command line
+     * and decodes the following input as binary frames once it does.
+     * @return true if the commands are sent in binary frames else false
+     */
+    boolean isBinary();
+
+    /**
+     * Handles the header of a FILE_UPLOAD command whose payload is about to be streamed in.
+     * @param header the command name, game tag, file name and declared size of the payload
+     * @return receiver of the payload, or null if the upload is rejected and the payload should be discarded
+     * @throws IOException thrown if there is an error in sending the response to the player
+     */
+    UploadSink onUpload(String[] header) throws IOException;
+
+    /**
+     * Handles the player closing the connection or the connection failing.
+     * @throws IOException thrown if there is an error in sending the response to the other players
+     */
+    void onDisconnect() throws IOException;
+
+    /**
+     * Notes that the connection has been closed, whether by the player, the server or a failure.
+     * It is called exactly once per connection.
+     */
+    void onClose();
+}
@@ -0,0 +1,16 @@
+package gameServer;
+
+/**
+ * The interface represents a front end serving the players of the game server over its own I/O threads.
+ * <p>
+ * Closing the server is done in two steps, so the connections can be drained in between: the front end
+ * first stops accepting connections while it keeps serving the open ones, and is then closed with all the
+ * connections still open.
+ */
+interface FrontEnd extends Server {
+
+    /**
+     * Stops accepting connections, leaving the open connections served.
+     */
+    void stopAccepting();
+}
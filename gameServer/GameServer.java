@@ -1,23 +1,45 @@
 package gameServer;
 
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketOption;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * The enum represents game state.
@@ -73,37 +95,146 @@ interface Server {
  * It provides methods to start and close the server.
  * <p>
  * It also maintains a centralized state of all the games and players.
- * It accepts a connection request from a player and creates a new thread to handle the player.
+ * By default it accepts a connection request from a player and creates a new thread to handle the player,
+ * which is a virtual thread with {@code -DgameServer.mode=virtual};
+ * with {@code -DgameServer.mode=nio} all the players are served by a non-blocking {@link SelectorServer},
+ * and with {@code -DgameServer.mode=async} by the completion handlers of an {@link AsyncServer}.
+ * With {@code -DgameServer.unixSocketPath} it also accepts co-located players on a Unix domain socket,
+ * whose commands are processed exactly like the ones received over TCP.
  */
 public class GameServer implements Server {
 
+    /**
+     * Precision of the timeouts in milliseconds.
+     */
+    private static final long TIMER_TICK_MILLIS = 100;
+    /**
+     * Option of HELLO negotiating the binary protocol.
+     */
+    private static final String BINARY_PROTOCOL = "BINARY";
+    /**
+     * Number of ticks in a turn of the timer wheel.
+     */
+    private static final int TIMER_WHEEL_SIZE = 512;
+    /**
+     * Last message sent to the players still connected when the server is closed.
+     */
+    private static final String SHUTDOWN_NOTICE = "Server is shutting down. Goodbye!";
+
     /**
      * Port number for the server to listen on
      */
     private final int port;
     /**
-     * Setup to accept connections from players.
+     * Startup options of the server.
+     */
+    private final ServerConfig config;
+    /**
+     * Setup to accept connections from players, one socket per listener.
+     */
+    private final List<ServerSocket> serverSockets = new CopyOnWriteArrayList<>();
+    /**
+     * Non-blocking front end serving the players, if one is configured.
+     */
+    private FrontEnd frontEnd;
+    /**
+     * Setup to accept connections from co-located players on the Unix domain socket, if one is configured.
+     */
+    private volatile ServerSocketChannel unixChannel;
+
+    /**
+     * Sessions of all the open connections, including the players that haven't said HELLO yet.
+     */
+    private final Set<PlayerSession> sessions = ConcurrentHashMap.newKeySet();
+    /**
+     * Number of commands being dispatched, counted so closing the server can let them complete.
+     */
+    private final AtomicInteger commandsInFlight = new AtomicInteger();
+    /**
+     * Flag set once the server is closing; no more commands are dispatched.
+     */
+    private volatile boolean draining;
+    /**
+     * Monitor notified when a command completes or a connection closes while the server is draining.
      */
-    private ServerSocket serverSocket;
+    private final Object drainMonitor = new Object();
 
     /**
      * Thread safe map to maintain all the active games.
      */
     private final ConcurrentHashMap<String, Game> games = new ConcurrentHashMap<>();
     /**
-     * Thread safe map to maintain all the player threads and
+     * Thread safe map to maintain all the player sessions and
      * used to identify the player reconnections.
      */
-    private final ConcurrentHashMap<String, GameThread> playerThreads = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, PlayerSession> playerThreads = new ConcurrentHashMap<>();
+    /**
+     * Single threaded scheduler of the connection and game timeouts.
+     */
+    private final TimerWheel timers = new TimerWheel(TIMER_TICK_MILLIS, TimeUnit.MILLISECONDS, TIMER_WHEEL_SIZE);
+    /**
+     * Counters of the work done by the server.
+     */
+    private final ServerMetrics metrics = new ServerMetrics();
+    /**
+     * Connection cap and accept rate limit of the server.
+     */
+    private final AdmissionControl admission;
+    /**
+     * Pool of the direct buffers the non-blocking connections are read into and written from.
+     */
+    private final BufferPool bufferPool;
+    /**
+     * Pool of the threads indexing large uploads, apart from the threads serving the connections.
+     */
+    private final ForkJoinPool indexPool;
+    /**
+     * Backend finding the words of the uploads, or null to scan them a byte at a time.
+     */
+    private final WordScanner wordScanner;
+    /**
+     * Indexes of the uploads shared by the games that uploaded the same content.
+     */
+    private final IndexCache indexCache = new IndexCache();
+    /**
+     * Player sessions with responses written by the current thread's dispatch cycle and not yet flushed,
+     * or no list if the current thread is not dispatching a command.
+     */
+    private final ThreadLocal<List<GameThread>> unflushed = new ThreadLocal<>();
 
     /**
-     * Constructor to create a GameServer
+     * Constructor to create a GameServer configured from the system properties.
      * @param addr address of the server e.g. localhost:8080
      *             where localhost is the host name and 8080 is the port number
      */
     public GameServer(String addr) {
+        this(addr, ServerConfig.fromSystemProperties());
+    }
+
+    /**
+     * Constructor to create a GameServer
+     * @param addr address of the server e.g. localhost:8080
+     *             where localhost is the host name and 8080 is the port number
+     * @param config startup options of the server
+     */
+    GameServer(String addr, ServerConfig config) {
         String[] splitAddr = addr.split(":", 2);
         this.port = Integer.parseInt(splitAddr[1]);
+        this.config = config;
+        this.admission = new AdmissionControl(config.maxConnections, config.acceptRate, config.acceptBurst, metrics);
+        this.bufferPool = new BufferPool(config.bufferSize);
+        this.indexPool = new ForkJoinPool(config.indexParallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("indexer-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        this.wordScanner = config.tokenizer == ServerConfig.Tokenizer.SCALAR ? null : WordScanner.loadVector();
+        if (wordScanner == null && config.tokenizer == ServerConfig.Tokenizer.VECTOR) {
+            System.out.println("The vector tokenizer needs --add-modules " + WordScanner.VECTOR_MODULE
+                    + " and the simd classes, using the scalar tokenizer");
+        }
+        System.out.println("Tokenizing uploads with the "
+                + (wordScanner == null ? "scalar" : wordScanner.describe()) + " tokenizer");
     }
 
     /**
@@ -124,6 +255,9 @@ public class GameServer implements Server {
             return;
         }
 
+        // drain the players when the process is asked to terminate
+        Runtime.getRuntime().addShutdownHook(new Thread(g::close, "shutdown"));
+
         // run the server
         g.run();
     }
@@ -132,53 +266,404 @@ public class GameServer implements Server {
      * Starts the game server and accepts connections from players.
      */
     public void run() {
+        if (config.spoolDirectory != null) {
+            try {
+                int deleted = UploadSpool.clean(config.spoolDirectory);
+                System.out.println("Spooling uploads to " + config.spoolDirectory + ", deleted " + deleted
+                        + " stale files");
+            } catch (IOException e) {
+                System.out.println("Exception caught " + e.getMessage());
+            }
+        }
+        startTimers();
         try {
-            serverSocket = new ServerSocket(port);
-            while (true) {
-                Socket playerSocket = serverSocket.accept();
-                GameThread newPlayerThread = new GameThread(playerSocket);
-                newPlayerThread.start();
+            if (config.unixSocketPath != null) {
+                unixChannel = openUnixChannel();
+            }
+            if (config.mode == ServerConfig.Mode.NIO) {
+                // the event loops serve the Unix domain socket connections too
+                frontEnd = new SelectorServer(this, port, config.ioThreads, config.backlog, config.listeners,
+                        unixChannel);
+                frontEnd.run();
+                return;
             }
+            if (unixChannel != null) {
+                ServerSocketChannel listener = unixChannel;
+                new Thread(() -> acceptUnixPlayers(listener), "unix-acceptor").start();
+            }
+            if (config.mode == ServerConfig.Mode.ASYNC) {
+                frontEnd = new AsyncServer(this, port, config.ioThreads, config.backlog, config.listeners);
+                frontEnd.run();
+                return;
+            }
+            ServerSocket first = openServerSocket(config.listeners > 1);
+            int listeners = reusePortListeners(config.listeners, first.supportedOptions());
+            for (int i = 1; i < listeners; i++) {
+                ServerSocket listener = openServerSocket(true);
+                new Thread(() -> acceptPlayers(listener), "acceptor-" + i).start();
+            }
+            acceptPlayers(first);
         } catch (IOException ioException) {
             ioException.printStackTrace();
         }
     }
 
     /**
-     * Shuts down the game server and clears all the active games and players.
+     * Opens a server socket listening on the port of the server.
+     * @param reusePort true to share the port with the other listeners through SO_REUSEPORT
+     * @return bound server socket
+     * @throws IOException thrown if the socket can't be bound
+     */
+    private ServerSocket openServerSocket(boolean reusePort) throws IOException {
+        ServerSocket listener = new ServerSocket();
+        serverSockets.add(listener);
+        if (reusePort && listener.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+            listener.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        }
+        listener.bind(new InetSocketAddress(port), config.backlog);
+        return listener;
+    }
+
+    /**
+     * Returns the number of listeners that can share the port of the server.
+     * @param listeners configured number of listeners
+     * @param supportedOptions socket options supported by the listening sockets
+     * @return the configured number of listeners if SO_REUSEPORT is supported, else 1
+     */
+    static int reusePortListeners(int listeners, Set<SocketOption<?>> supportedOptions) {
+        if (listeners > 1 && !supportedOptions.contains(StandardSocketOptions.SO_REUSEPORT)) {
+            System.out.println("SO_REUSEPORT is not supported, listening with a single socket");
+            return 1;
+        }
+        return listeners;
+    }
+
+    /**
+     * Accepts connections from players on one listener and starts a thread for each admitted player.
+     * @param listener server socket to accept the connections from
+     */
+    private void acceptPlayers(ServerSocket listener) {
+        try {
+            while (true) {
+                Socket playerSocket = listener.accept();
+                if (!admission.admit()) {
+                    rejectBusy(playerSocket);
+                    continue;
+                }
+                admission.awaitToken();
+                startPlayerThread(new GameThread(playerSocket));
+            }
+        } catch (IOException ioException) {
+            if (!listener.isClosed()) {
+                ioException.printStackTrace();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Accepts connections from players on the Unix domain socket and starts a thread for each admitted player.
+     * The connections are served by blocking player threads in every mode, virtual ones unless the server
+     * runs with platform threads, since the JDK has no asynchronous channels for Unix domain sockets.
+     * @param listener server channel bound to the socket path
+     */
+    private void acceptUnixPlayers(ServerSocketChannel listener) {
+        try {
+            while (true) {
+                SocketChannel playerChannel = listener.accept();
+                if (!admission.admit()) {
+                    AdmissionControl.rejectBusy(playerChannel);
+                    continue;
+                }
+                admission.awaitToken();
+                startPlayerThread(new GameThread(playerChannel));
+            }
+        } catch (IOException ioException) {
+            if (listener.isOpen()) {
+                ioException.printStackTrace();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Starts the thread of a player, a platform thread with {@code -DgameServer.mode=thread}
+     * and a virtual thread otherwise.
+     * @param playerThread session of the player
+     */
+    private void startPlayerThread(GameThread playerThread) {
+        if (config.mode == ServerConfig.Mode.THREAD) {
+            new Thread(playerThread).start();
+        } else {
+            Thread.startVirtualThread(playerThread);
+        }
+    }
+
+    /**
+     * Opens a server channel listening on the Unix domain socket path of the server. A socket file left
+     * behind by a previous run is removed first; any other file at the path makes the bind fail.
+     * @return bound server channel
+     * @throws IOException thrown if the channel can't be bound
+     */
+    private ServerSocketChannel openUnixChannel() throws IOException {
+        Path path = config.unixSocketPath;
+        if (Files.exists(path, LinkOption.NOFOLLOW_LINKS)
+                && Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isOther()) {
+            Files.delete(path);
+        }
+        ServerSocketChannel listener = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        listener.bind(UnixDomainSocketAddress.of(path), config.backlog);
+        return listener;
+    }
+
+    /**
+     * Tells a connection over the connection cap that the server is busy and closes it.
+     * @param playerSocket socket of the rejected connection
+     */
+    private void rejectBusy(Socket playerSocket) {
+        try (playerSocket) {
+            Channels.newChannel(playerSocket.getOutputStream()).write(AdmissionControl.busyMessage());
+        } catch (IOException e) {
+            System.out.println("Exception caught " + e.getMessage());
+        }
+    }
+
+    /**
+     * Shuts down the game server gracefully and clears all the active games and players.
+     * <p>
+     * It stops accepting connections and dispatching new commands, waits for the commands being dispatched
+     * to complete, then sends the remaining players a final notice and closes their connections once their
+     * queued responses have been written. The connections still open at the drain deadline,
+     * {@code -DgameServer.drainTimeoutMillis} after the start, are closed right away.
      */
     public void close() {
+        if (draining) {
+            return;
+        }
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(config.drainTimeoutMillis);
+        draining = true;
         try {
-            serverSocket.close();
-            playerThreads.clear();
-            games.clear();
+            if (frontEnd != null) {
+                frontEnd.stopAccepting();
+            }
+            for (ServerSocket listener : serverSockets) {
+                listener.close();
+            }
+            if (unixChannel != null) {
+                unixChannel.close();
+                Files.deleteIfExists(config.unixSocketPath);
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
+
+        awaitDrain(() -> commandsInFlight.get() == 0, deadline);
+        int connections = sessions.size();
+        for (PlayerSession session : sessions) {
+            session.shutdown();
+        }
+        awaitDrain(sessions::isEmpty, deadline);
+        int forced = sessions.size();
+        for (PlayerSession session : sessions) {
+            session.expire();
+        }
+        if (frontEnd != null) {
+            frontEnd.close();
+        }
+        System.out.println("Drained " + connections + " connections in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms"
+                + (forced > 0 ? ", " + forced + " closed at the deadline" : ""));
+
+        timers.close();
+        indexPool.shutdownNow();
+        System.out.println("Server metrics: " + metricsReport());
+        playerThreads.clear();
+        games.clear();
+    }
+
+    /**
+     * Waits, while the server is draining, until a condition holds or the drain deadline passes.
+     * @param drained condition to wait for, checked again whenever a command completes or a connection closes
+     * @param deadline drain deadline in {@link System#nanoTime()} units
+     */
+    private void awaitDrain(BooleanSupplier drained, long deadline) {
+        synchronized (drainMonitor) {
+            try {
+                long remaining;
+                while (!drained.getAsBoolean() && (remaining = deadline - System.nanoTime()) > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(drainMonitor, remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
     /**
-     * Each GameThread supports Socket interaction with a single Player.
+     * Wakes the thread closing the server, if it is draining, to check its condition again.
+     */
+    private void drainProgressed() {
+        if (draining) {
+            synchronized (drainMonitor) {
+                drainMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Starts the thread running the timer wheel. All the timeouts of the server, like the idle
+     * detection of the connections, are scheduled with this one thread.
+     */
+    private void startTimers() {
+        Thread thread = new Thread(timers, "timer-wheel");
+        thread.setDaemon(true);
+        thread.start();
+        if (config.metricsIntervalMillis > 0) {
+            timers.schedule(this::logMetrics, config.metricsIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Logs the server metrics and schedules the next log.
+     */
+    private void logMetrics() {
+        System.out.println("Server metrics: " + metricsReport());
+        timers.schedule(this::logMetrics, config.metricsIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Formats a snapshot of the server metrics, the open connections and the buffer pool occupancy for the log.
+     * @return metrics as name=value pairs
+     */
+    private String metricsReport() {
+        return metrics + " openConnections=" + admission.connections() + " " + bufferPool + " " + indexCache;
+    }
+
+    /**
+     * Creates the bounded queue of the responses waiting to be written to a player.
+     * @return empty queue with the configured bounds
+     */
+    OutboundQueue newOutboundQueue() {
+        return new OutboundQueue(config.maxOutboundBytes, config.maxOutboundAgeMillis);
+    }
+
+    /**
+     * Returns the counters of the work done by the server.
+     * @return server metrics
+     */
+    ServerMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the connection cap and accept rate limit of the server.
+     * @return admission control of the connections
+     */
+    AdmissionControl admission() {
+        return admission;
+    }
+
+    /**
+     * Returns the pool of the buffers the non-blocking connections are read into and written from.
+     * @return buffer pool of the server
+     */
+    BufferPool bufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Returns the scheduler of the server's timeouts.
+     * @return timer wheel of the server
+     */
+    TimerWheel timers() {
+        return timers;
+    }
+
+    /**
+     * Encodes a message for the players.
+     * The buffer is read-only, so the same bytes can be sent to any number of players.
+     * @param message message to be sent
+     * @return message with its line terminator encoded in UTF-8
+     */
+    private static ByteBuffer encode(String message) {
+        return ByteBuffer.wrap((message + "\n").getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+    }
+
+    /**
+     * Creates the player session processing the commands received over a non-blocking connection.
+     * @param connection connection to the player
+     * @return session to be notified of the commands and the disconnection of the player
+     */
+    ConnectionHandler openSession(PlayerConnection connection) {
+        return new ChannelSession(connection);
+    }
+
+    /**
+     * Each GameThread supports blocking Socket interaction with a single Player on its own thread.
      * <p>
-     * It maintains the state of the player and handles all the commands from the player.
+     * The thread is a platform thread or, in the virtual mode, a virtual thread that unmounts from its
+     * carrier while the player is idle in a blocking read.
+     * <p>
+     * All the complete commands received are dispatched in order, including the ones a client pipelines
+     * without waiting for the responses.
+     * Responses never block the thread sending them: they are put into the player's bounded {@link OutboundQueue}
+     * and written by a writer virtual thread of the connection. They are also coalesced: while a thread dispatches
+     * the commands of one read, the writers of the players it responds to are only woken at the end of the cycle,
+     * so each of them writes everything queued with as few socket writes as possible. A player that doesn't read
+     * fast enough to keep its queue within bounds is disconnected.
      */
-    private class GameThread extends Thread {
+    private class GameThread extends PlayerSession implements Runnable {
         /**
-         * Player object to maintain the state of the player.
+         * Size of the buffer the socket is read into.
+         */
+        private static final int READ_BUFFER_SIZE = 8192;
+        /**
+         * Size of the buffer the queued responses are copied into for one socket write.
          */
-        private Player player;
+        private static final int WRITE_BUFFER_SIZE = 8192;
         /**
-         * Socket object to maintain the connection with the player.
+         * Socket object to maintain the connection with the player, or the channel of a Unix domain socket.
          */
-        private final Socket playerSocket;
+        private final Closeable playerSocket;
         /**
-         * Reader to read the input from the player.
+         * Decoder framing the input from the player into commands.
          */
-        private BufferedReader reader;
+        private final CommandDecoder decoder = new CommandDecoder(this);
         /**
-         * Writer to send the output to the player.
+         * Responses waiting to be written to the player.
          */
-        private BufferedWriter writer;
+        private final OutboundQueue outbound = newOutboundQueue();
+        /**
+         * Thread writing the queued responses to the socket.
+         */
+        private volatile Thread writer;
+        /**
+         * Flag set when the writer has queued responses to write.
+         */
+        private final AtomicBoolean flushRequested = new AtomicBoolean();
+        /**
+         * Flag to identify if the session is in the unflushed list of a dispatch cycle.
+         */
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+        /**
+         * Sessions this thread has to flush at the end of its dispatch cycle.
+         */
+        private final List<GameThread> cycle = new ArrayList<>();
+        /**
+         * Flag set once the writer should close the socket after writing the queued responses.
+         */
+        private volatile boolean closeRequested;
+        /**
+         * Flag set once the player thread has stopped reading, so the writer stops after the queued responses.
+         */
+        private volatile boolean stopped;
+        /**
+         * Flag set once the server has closed the connection, for being idle, too slow or broken.
+         */
+        private volatile boolean closedByServer;
 
         /**
          * Constructor to create a GameThread
@@ -188,63 +673,583 @@ public class GameServer implements Server {
             this.playerSocket = playerSocket;
         }
 
+        /**
+         * Constructor to create a GameThread over a blocking channel, such as a Unix domain socket.
+         * @param playerChannel channel to maintain the connection with the player
+         */
+        GameThread(SocketChannel playerChannel) {
+            this.playerSocket = playerChannel;
+        }
+
         /**
          * Starts the thread and handles all the commands from the player.
          * It also handles the player disconnection.
          */
         public void run() {
             try {
-                reader = new BufferedReader((new InputStreamReader(playerSocket.getInputStream())));
-                writer = new BufferedWriter(new OutputStreamWriter(playerSocket.getOutputStream()));
-                String inputCommand;
-                int count = 0;
-                while (true) {
-                    count++;
-                    inputCommand = reader.readLine();
-                    if (inputCommand != null) {
-                        handle(inputCommand);
-                    }
-                    else if(count > 100000 && isSocketConnected(playerSocket)){
-                        count = 0;
+                InputStream in = playerSocket instanceof Socket socket
+                        ? socket.getInputStream() : Channels.newInputStream((SocketChannel) playerSocket);
+                OutputStream out = playerSocket instanceof Socket socket
+                        ? socket.getOutputStream() : Channels.newOutputStream((SocketChannel) playerSocket);
+                writer = Thread.ofVirtual().name("player-writer").start(() -> writeResponses(out));
+                byte[] buffer = new byte[READ_BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    if (read > 0) {
+                        onRead();
+                        beginCycle();
+                        try {
+                            decoder.feed(ByteBuffer.wrap(buffer, 0, read));
+                            // pipelined commands already received are dispatched in the same cycle,
+                            // so all their responses are written together
+                            while (in.available() > 0 && (read = in.read(buffer)) > 0) {
+                                decoder.feed(ByteBuffer.wrap(buffer, 0, read));
+                            }
+                        } finally {
+                            endCycle();
+                        }
                     }
-                    else {
-                        handlePlayerDisconnect();
-                        break;
+                }
+                beginCycle();
+                try {
+                    handlePlayerDisconnect();
+                } finally {
+                    endCycle();
+                }
+            } catch (IOException e) {
+                if (closedByServer) {
+                    // the server closed the socket under the blocked read
+                    disconnectQuietly();
+                } else {
+                    System.out.println("Exception caught "+e.getMessage());
+                }
+            } finally {
+                decoder.abort();
+                stopped = true;
+                // the writer closes the socket itself once the responses queued before a close are written
+                if (!closeRequested) {
+                    try {
+                        playerSocket.close();
+                    } catch (IOException e) {
+                        System.out.println("Exception caught "+e.getMessage());
                     }
                 }
+                onClose();
+                LockSupport.unpark(writer);
+            }
+
+        }
+
+        /**
+         * Handles the disconnection of the player without failing on a broken connection.
+         */
+        private void disconnectQuietly() {
+            beginCycle();
+            try {
+                handlePlayerDisconnect();
             } catch (IOException e) {
                 System.out.println("Exception caught "+e.getMessage());
+            } finally {
+                endCycle();
             }
-
         }
 
         /**
-         * Checks if the socket is still connected.
-         * @param socket socket object to send the heartbeat over the connection with the player
-         * @return true if socket is connected else false
+         * Closes the socket of the player; the blocked read fails and the player thread
+         * handles the disconnection.
          */
-        private static boolean isSocketConnected(Socket socket) {
+        private void closeAndDisconnect() {
+            closedByServer = true;
             try {
-                OutputStream out = socket.getOutputStream();
-                out.write("heartbeat".getBytes());
-                out.flush();
+                playerSocket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
 
-                InputStream in = socket.getInputStream();
-                byte[] buffer = new byte[9];
-                int bytesRead = in.read(buffer);
+        /**
+         * Closes the socket of the idle or slow player, whose thread handles the disconnection.
+         */
+        void expire() {
+            closeAndDisconnect();
+        }
+
+        /**
+         * Checks the queue of the writer for a response waiting too long.
+         * @return true if the player is a slow consumer else false
+         */
+        boolean isStale() {
+            return outbound.isStale();
+        }
 
-                return bytesRead == 9;
+        /**
+         * Returns no executor, as the player thread serves this player only and may wait for the index pool.
+         * @return null
+         */
+        Executor uploadCompletion() {
+            return null;
+        }
+
+        /**
+         * Starts a dispatch cycle: the writers of the players this thread responds to are woken at {@link #endCycle()}.
+         */
+        private void beginCycle() {
+            unflushed.set(cycle);
+        }
+
+        /**
+         * Ends the dispatch cycle and wakes the writers of every player responses were queued for.
+         */
+        private void endCycle() {
+            unflushed.remove();
+            for (GameThread session : cycle) {
+                session.flush();
+            }
+            cycle.clear();
+        }
+
+        /**
+         * Queues the response to the player. It is written at the end of the current dispatch cycle,
+         * or right away if the calling thread is not dispatching a command. It never blocks: if the player
+         * is too slow to keep its queue within bounds, the player is disconnected.
+         * @param message encoded message to be sent to the player.
+         */
+        void send(ByteBuffer message) {
+            if (closedByServer || closeRequested) {
+                return;
+            }
+            metrics.responseQueued();
+            if (!outbound.offer(message)) {
+                System.out.println("Disconnecting slow player with " + outbound.bytes() + " bytes waiting"
+                        + (player != null ? " :" + player.getUsername() : ""));
+                metrics.slowConsumerEvicted();
+                closeAndDisconnect();
+                return;
+            }
+            List<GameThread> sessions = unflushed.get();
+            if (sessions == null) {
+                flush();
+            } else if (flushScheduled.compareAndSet(false, true)) {
+                sessions.add(this);
+            }
+        }
+
+        /**
+         * Wakes the writer to write the queued responses.
+         */
+        private void flush() {
+            flushScheduled.set(false);
+            flushRequested.set(true);
+            LockSupport.unpark(writer);
+        }
+
+        /**
+         * Runs the writer: waits for queued responses and writes them, coalescing consecutive responses
+         * into one socket write. A failed write closes the connection.
+         * @param out stream to send the output to the player
+         */
+        private void writeResponses(OutputStream out) {
+            byte[] batch = new byte[WRITE_BUFFER_SIZE];
+            try {
+                while (true) {
+                    boolean closing = closeRequested;
+                    boolean finished = stopped;
+                    if (flushRequested.getAndSet(false)) {
+                        drain(out, batch);
+                    } else if (closing) {
+                        playerSocket.close();
+                        return;
+                    } else if (finished || closedByServer) {
+                        return;
+                    } else {
+                        LockSupport.park(this);
+                    }
+                }
             } catch (IOException e) {
+                if (!closedByServer && !stopped) {
+                    System.out.println("Exception caught "+e.getMessage());
+                    closeAndDisconnect();
+                }
+            }
+        }
+
+        /**
+         * Writes all the queued responses.
+         * @param out stream to send the output to the player
+         * @param batch buffer the responses are copied into for one socket write
+         * @throws IOException thrown if there is an error in sending the responses to the player.
+         */
+        private void drain(OutputStream out, byte[] batch) throws IOException {
+            int length = 0;
+            ByteBuffer message;
+            while ((message = outbound.peek()) != null) {
+                int offset = 0;
+                while (offset < message.remaining()) {
+                    int chunk = Math.min(message.remaining() - offset, batch.length - length);
+                    message.get(message.position() + offset, batch, length, chunk);
+                    offset += chunk;
+                    length += chunk;
+                    if (length == batch.length) {
+                        out.write(batch, 0, length);
+                        metrics.flushed();
+                        length = 0;
+                    }
+                }
+                outbound.poll();
+            }
+            if (length > 0) {
+                out.write(batch, 0, length);
+                metrics.flushed();
+            }
+        }
+
+        /**
+         * Stops reading commands, and closes the socket of the player once the queued responses are written.
+         */
+        void closeConnection() {
+            stopTimers();
+            decoder.stop();
+            closeRequested = true;
+            flush();
+        }
+    }
+
+    /**
+     * Each ChannelSession processes the commands of a single Player received over a non-blocking
+     * {@link PlayerConnection}, a {@link ChannelConnection} or an {@link AsyncConnection}. It runs on the thread
+     * dispatching the connection's commands.
+     */
+    private class ChannelSession extends PlayerSession {
+        /**
+         * Connection to the player.
+         */
+        private final PlayerConnection connection;
+
+        /**
+         * Constructor to create a ChannelSession
+         * @param connection connection to the player
+         */
+        ChannelSession(PlayerConnection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Queues the message to be written to the player by the event loop.
+         * The connection writes its own view of the shared message, so the bytes are not copied.
+         * @param message encoded message to be sent to the player.
+         */
+        void send(ByteBuffer message) {
+            connection.send(message.duplicate());
+        }
+
+        /**
+         * Closes the connection once the queued messages have been written.
+         */
+        void closeConnection() {
+            stopTimers();
+            connection.close();
+        }
+
+        /**
+         * Handles the player closing the connection.
+         * @throws IOException thrown if there is an error in sending the response to the other players
+         */
+        public void onDisconnect() throws IOException {
+            stopTimers();
+            super.onDisconnect();
+        }
+
+        /**
+         * Closes the connection of the idle or slow player on its event loop, which handles the disconnection.
+         */
+        void expire() {
+            connection.evict();
+        }
+
+        /**
+         * Checks the queue of the connection for a response waiting too long.
+         * @return true if the player is a slow consumer else false
+         */
+        boolean isStale() {
+            return connection.isStale();
+        }
+
+        /**
+         * Returns the connection's own dispatch context, as the event loop must not wait for the index pool.
+         * @return executor of the connection
+         */
+        Executor uploadCompletion() {
+            return connection::execute;
+        }
+    }
+
+    /**
+     * Each PlayerSession maintains the state of a single Player and handles all the commands from the player.
+     * <p>
+     * Subclasses provide the connection to the player the commands are received over and the responses are sent to.
+     */
+    private abstract class PlayerSession implements ConnectionHandler {
+        /**
+         * Player object to maintain the state of the player.
+         */
+        protected Player player;
+        /**
+         * Time in {@link System#nanoTime()} units when the last bytes were received from the player.
+         */
+        protected volatile long lastActivity = System.nanoTime();
+        /**
+         * Timeout checking the connection for idleness, or null if the idle detection is disabled.
+         */
+        private volatile TimerWheel.Timeout idleTimer;
+        /**
+         * Timeout checking the age of the queued responses, or null if their age is not bounded.
+         */
+        private volatile TimerWheel.Timeout staleTimer;
+        /**
+         * Flag set once the connection has ended and is no longer checked for idleness or slowness.
+         */
+        private volatile boolean ended;
+        /**
+         * Flag set once the player negotiated the binary protocol. It is only used by the thread reading the connection.
+         */
+        private boolean binary;
+
+        /**
+         * Constructor to create a PlayerSession and start its idle and slow consumer detection.
+         */
+        PlayerSession() {
+            sessions.add(this);
+            if (config.idleTimeoutMillis > 0) {
+                idleTimer = timers.schedule(this::checkIdle, config.idleTimeoutMillis, TimeUnit.MILLISECONDS);
+            }
+            if (config.maxOutboundAgeMillis > 0) {
+                staleTimer = timers.schedule(this::checkStale, config.maxOutboundAgeMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * Checks, on the timer thread, if the player has been idle for longer than the idle timeout.
+         * The activity itself doesn't touch the timer: if the player was heard from in the meantime,
+         * the check is scheduled again for the remaining time.
+         */
+        private void checkIdle() {
+            if (ended) {
+                return;
+            }
+            long timeout = TimeUnit.MILLISECONDS.toNanos(config.idleTimeoutMillis);
+            long idle = System.nanoTime() - lastActivity;
+            if (idle < timeout) {
+                idleTimer = timers.schedule(this::checkIdle, timeout - idle, TimeUnit.NANOSECONDS);
+                return;
+            }
+            ended = true;
+            System.out.println("Closing connection idle for more than " + config.idleTimeoutMillis + " ms"
+                    + (player != null ? " :" + player.getUsername() : ""));
+            expire();
+        }
+
+        /**
+         * Checks, on the timer thread, if a response has been waiting for longer than the outbound age bound.
+         * A player that stopped reading is caught here even if it is sent nothing more; otherwise the check is
+         * scheduled again.
+         */
+        private void checkStale() {
+            if (ended) {
+                return;
+            }
+            if (!isStale()) {
+                staleTimer = timers.schedule(this::checkStale, config.maxOutboundAgeMillis, TimeUnit.MILLISECONDS);
+                return;
+            }
+            ended = true;
+            System.out.println("Disconnecting slow player with responses waiting for more than "
+                    + config.maxOutboundAgeMillis + " ms" + (player != null ? " :" + player.getUsername() : ""));
+            expire();
+        }
+
+        /**
+         * Stops the idle and slow consumer detection once the connection has ended.
+         */
+        void stopTimers() {
+            ended = true;
+            TimerWheel.Timeout timer = idleTimer;
+            if (timer != null) {
+                timer.cancel();
+            }
+            timer = staleTimer;
+            if (timer != null) {
+                timer.cancel();
+            }
+        }
+
+        /**
+         * Records the time the player was last heard from.
+         */
+        public void onRead() {
+            lastActivity = System.nanoTime();
+        }
+
+        /**
+         * Validates the command line and delegates to the command handler.
+         * @param line command from the player
+         * @throws IOException thrown if there is an error in sending the response to the player
+         */
+        public void onLine(String line) throws IOException {
+            if (!beginCommand()) {
+                return;
+            }
+            try {
+                handle(line);
+            } finally {
+                endCommand();
+            }
+        }
+
+        /**
+         * Logs the command decoded from a binary frame and delegates to the command handler.
+         * @param command command name and arguments from the player
+         * @throws IOException thrown if there is an error in sending the response to the player
+         */
+        public void onCommand(String[] command) throws IOException {
+            if (!beginCommand()) {
+                return;
+            }
+            try {
+                System.out.println("Received command:" + String.join(" ", command));
+                invokeCommandHandler(command);
+            } finally {
+                endCommand();
+            }
+        }
+
+        /**
+         * Checks if the player negotiated the binary protocol at HELLO.
+         * @return true if the commands are sent in binary frames else false
+         */
+        public boolean isBinary() {
+            return binary;
+        }
+
+        /**
+         * Validates the header of a streamed FILE_UPLOAD and prepares the game for the payload.
+         * @param header command from the player without the payload
+         * @return receiver of the payload, or null if the upload is rejected
+         * @throws IOException thrown if there is an error in sending the response to the player
+         */
+        public UploadSink onUpload(String[] header) throws IOException {
+            if (!beginCommand()) {
+                return null;
+            }
+            try {
+                System.out.println("Received command:" + String.join(" ", header));
+                return executeFileUpload(header);
+            } finally {
+                endCommand();
+            }
+        }
+
+        /**
+         * Counts a command about to be dispatched, unless the server is draining.
+         * @return true if the command can be dispatched, false if it is dropped
+         */
+        private boolean beginCommand() {
+            commandsInFlight.incrementAndGet();
+            if (draining) {
+                endCommand();
                 return false;
             }
+            return true;
         }
 
+        /**
+         * Counts a dispatched command as completed.
+         */
+        private void endCommand() {
+            if (commandsInFlight.decrementAndGet() == 0) {
+                drainProgressed();
+            }
+        }
+
+        /**
+         * Sends the final notice to the player and closes the connection once the queued responses are written,
+         * when the server is closed.
+         */
+        void shutdown() {
+            try {
+                respond(SHUTDOWN_NOTICE);
+                closeConnection();
+            } catch (IOException e) {
+                System.out.println("Exception caught " + e.getMessage());
+            }
+        }
+
+        /**
+         * Handles the player closing the connection.
+         * @throws IOException thrown if there is an error in sending the response to the other players
+         */
+        public void onDisconnect() throws IOException {
+            handlePlayerDisconnect();
+        }
+
+        /**
+         * Stops the idle and slow consumer detection, frees the connection's admission slot and lets a draining
+         * server know once the connection is closed.
+         */
+        public void onClose() {
+            stopTimers();
+            admission.release();
+            sessions.remove(this);
+            drainProgressed();
+        }
+
+        /**
+         * Responds to the player with the message.
+         * @param message message to be sent to the player.
+         * @throws IOException thrown if there is an error in sending the response to the player.
+         */
+        void respond(String message) throws IOException {
+            send(encode(message));
+        }
+
+        /**
+         * Sends an encoded message to the player.
+         * The message may be shared with other players, so it is neither modified nor consumed.
+         * @param message encoded message, including the line terminator, between its position and limit
+         * @throws IOException thrown if there is an error in sending the response to the player.
+         */
+        abstract void send(ByteBuffer message) throws IOException;
+
+        /**
+         * Closes the connection with the player.
+         * @throws IOException thrown if there is an error in closing the connection
+         */
+        abstract void closeConnection() throws IOException;
+
+        /**
+         * Closes the connection of a player that has been idle or slow for too long, from the timer thread.
+         * The disconnection of the player is handled by the thread serving the connection.
+         */
+        abstract void expire();
+
+        /**
+         * Checks if a response has been waiting to be written to the player for longer than the outbound age bound.
+         * @return true if the player is a slow consumer else false
+         */
+        abstract boolean isStale();
+
+        /**
+         * Returns the executor an upload indexed on the index pool is completed on, in the context the session's
+         * commands are dispatched in.
+         * @return executor of the session, or null if the thread dispatching the commands may wait for the pool
+         */
+        abstract Executor uploadCompletion();
+
         /**
          * Handles the player disconnection.
          * It removes the player from all the active games and assigns a new leader if the player was a leader.
          * @throws IOException thrown if there is an error in sending the response to the player
          */
-        private void handlePlayerDisconnect() throws IOException {
+        void handlePlayerDisconnect() throws IOException {
             if(games != null && !games.isEmpty() && player != null) {
                 System.out.println("Player  disconnected :"+player.getUsername());
                 for(Game game: games.values()) {
@@ -266,21 +1271,20 @@ public class GameServer implements Server {
          * @param inputCommand command from the player
          * @throws IOException thrown if there is an error in sending the response to the player
          */
-        private void handle(String inputCommand) throws IOException {
+        void handle(String inputCommand) throws IOException {
             System.out.println("Received command:" + inputCommand);
             if (isValid(inputCommand)) {
-                invokeCommandHandler(inputCommand);
+                invokeCommandHandler(inputCommand.split("\\s+"));
             } else
                 respond("Error! Please send a valid command.");
         }
 
         /**
-         * Invokes the command handler based on the input command.
-         * @param inputCommand command from the player
+         * Invokes the command handler based on the command name.
+         * @param fullCommand command name and arguments from the player
          * @throws IOException thrown if there is an error in sending the response to the player
          */
-        private void invokeCommandHandler(String inputCommand) throws IOException {
-            String[] fullCommand = inputCommand.split("\\s+");
+        private void invokeCommandHandler(String[] fullCommand) throws IOException {
             switch (fullCommand[0]) {
                 case "HELLO":
                     executeHello(fullCommand);
@@ -298,7 +1302,10 @@ public class GameServer implements Server {
                     executeStartGame(fullCommand);
                     break;
                 case "FILE_UPLOAD":
-                    executeFileUpload(fullCommand);
+                case CommandDecoder.FILE_UPLOAD_DEFLATE:
+                case CommandDecoder.FILE_UPLOAD_GZIP:
+                    // a complete header is streamed by the decoder through onUpload, so this line has no payload
+                    respond("Invalid arguments for command " + fullCommand[0] + ".");
                     break;
                 case "RANDOM_WORD":
                     executeRandomWord(fullCommand);
@@ -312,11 +1319,28 @@ public class GameServer implements Server {
                 case "GOODBYE":
                     executeGoodbye(fullCommand);
                     break;
+                case "PING":
+                    executePing(fullCommand);
+                    break;
                 default:
                     respond("Error! Please send a valid command.");
             }
         }
 
+        /**
+         * Executes the command PING.
+         * It lets the player keep an idle connection open and check that the server is responsive.
+         * @param fullCommand command from the player
+         * @throws IOException thrown if there is an error in sending the response to the player
+         */
+        private void executePing(String[] fullCommand) throws IOException {
+            if(fullCommand.length != 1) {
+                respond("Invalid arguments for command " + fullCommand[0] + ".");
+            } else {
+                respond("PONG");
+            }
+        }
+
         /**
          * Executes the command GOODBYE.
          * It removes the player from all the active games and closes the connection with the player.
@@ -359,9 +1383,7 @@ public class GameServer implements Server {
                 }
                 respond("Bye!");
                 playerThreads.remove(player.getUsername());
-                reader.close();
-                writer.close();
-                playerSocket.close();
+                closeConnection();
             }
         }
 
@@ -401,7 +1423,7 @@ public class GameServer implements Server {
          * @throws IOException thrown if there is an error in sending the response to the player
          */
         private void executeWordCount(String[] fullCommand) throws IOException {
-            if(fullCommand.length != 3) {
+            if(fullCommand.length != 3 || !isInteger(fullCommand[2])) {
                 respond("Invalid arguments for command " + fullCommand[0] + ".");
             } else if (isNewPlayer()) {
                 respond("New player must always start with HELLO!");
@@ -423,6 +1445,20 @@ public class GameServer implements Server {
             }
         }
 
+        /**
+         * Checks if the argument of a command is a whole number that fits in an int.
+         * @param argument argument from the player
+         * @return true if the argument is a number else false
+         */
+        private boolean isInteger(String argument) {
+            try {
+                Integer.parseInt(argument);
+                return true;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+
         /**
          * Executes the command RANDOM_WORD.
          * It adds the player's guess to the game if the player is a word picker
@@ -459,32 +1495,45 @@ public class GameServer implements Server {
         }
 
         /**
-         * Executes the command FILE_UPLOAD.
-         * It uploads the file to the game if the player is a leader and the file is not already used in the same game session.
-         * @param fullCommand command from the player
+         * Executes the command FILE_UPLOAD, or its compressed variants FILE_UPLOAD_DEFLATE and FILE_UPLOAD_GZIP.
+         * It uploads the file to the game if the player is a leader, the file is not already used in the same game session
+         * and the declared size is within the configured maximum upload size; a compressed payload is inflated as it is
+         * streamed in, and its inflated size must be within the maximum too.
+         * @param header command from the player without the payload i.e. FILE_UPLOAD, tag, file name and size
+         * @return receiver streaming the payload into the game, or null if the upload is rejected
          * @throws IOException thrown if there is an error in sending the response to the player
          */
-        private void executeFileUpload(String[] fullCommand) throws IOException {
-            if(fullCommand.length < 5) {
-                respond("Invalid arguments for command " + fullCommand[0] + ".");
+        private UploadSink executeFileUpload(String[] header) throws IOException {
+            if(header.length != 4 || CommandDecoder.parseSize(header[3]) < 0) {
+                respond("Invalid arguments for command " + header[0] + ".");
             } else if (isNewPlayer()) {
                 respond("New player must always start with HELLO!");
             } else {
-                String gameId = fullCommand[1];
-                String fileName = fullCommand[2];
+                String gameId = header[1];
+                String fileName = header[2];
                 if (games.containsKey(gameId)) {
                     Game game = games.get(gameId);
                     if (!game.isLeader(player.getUsername())) {
                         respond("Only the leader can upload the file. Please contact " + game.getLeader() + ".");
                     } else if (game.isFileAlreadyUsed(fileName)) {
                         respond("Upload failed! File " + fileName + " already exists for game "+gameId+".");
+                    } else if (CommandDecoder.parseSize(header[3]) > config.maxUploadBytes) {
+                        respond("Upload failed! File " + fileName + " is larger than " + config.maxUploadBytes + " bytes.");
+                    } else if (header[0].equals(CommandDecoder.FILE_UPLOAD_DEFLATE)
+                            || header[0].equals(CommandDecoder.FILE_UPLOAD_GZIP)) {
+                        // inflated as it is streamed in, bounded like a plain upload
+                        UploadSink inflated = game.uploadFile(fileName, CommandDecoder.parseSize(header[3]),
+                                uploadCompletion());
+                        return new InflatingSink(inflated,
+                                header[0].equals(CommandDecoder.FILE_UPLOAD_GZIP), config.maxUploadBytes);
                     } else {
-                        game.uploadFile(fullCommand);
+                        return game.uploadFile(fileName, CommandDecoder.parseSize(header[3]), uploadCompletion());
                     }
                 }else {
                     respond("Game " + gameId + " doesn't exist! Please enter correct tag or create a new game.");
                 }
             }
+            return null;
         }
 
         /**
@@ -612,10 +1661,15 @@ public class GameServer implements Server {
          * Executes the command HELLO.
          * It registers the player if it's a new player, else it resumes the player's state.
          * It also checks if the player is already in any active games and adds the player back to the game.
+         * A trailing BINARY switches the following commands of the player to the binary protocol.
          * @param fullCommand command from the player
          * @throws IOException thrown if there is an error in sending the response to the player
          */
         private void executeHello(String[] fullCommand) throws IOException {
+            if (fullCommand.length == 3 && BINARY_PROTOCOL.equals(fullCommand[2])) {
+                binary = true;
+                fullCommand = new String[] {fullCommand[0], fullCommand[1]};
+            }
             if (fullCommand.length == 1) {
                 respond("Invalid user name. Try again.");
             } else if (fullCommand.length > 2) {
@@ -663,17 +1717,6 @@ public class GameServer implements Server {
             return player == null || !player.isRegistered();
         }
 
-        /**
-         * Responds to the player with the message.
-         * @param message message to be sent to the player.
-         * @throws IOException thrown if there is an error in sending the response to the player.
-         */
-        private void respond(String message) throws IOException {
-            writer.write(message);
-            writer.newLine();
-            writer.flush();
-        }
-
         /**
          * Validates the input command to not empty or blank.
          * @param input command from the player
@@ -821,9 +1864,14 @@ public class GameServer implements Server {
         private Integer currentWordOccurrenceCount = 0;
 
         /**
-         * File content of the file uploaded by the leader for the running game.
+         * Counts of the words of the file uploaded by the leader for the running game.
+         */
+        private WordIndex wordIndex;
+
+        /**
+         * Key of {@link #wordIndex} in the index cache, or null if the index isn't shared.
          */
-        private String currentFileContent;
+        private String wordIndexKey;
 
         /**
          * Map of player's username and corresponding guesses for the running game.
@@ -855,14 +1903,16 @@ public class GameServer implements Server {
          */
         public void respondPlayers(String message, boolean skipLeader, boolean skipWordPicker) throws IOException {
             if (players != null && !players.isEmpty()) {
+                // encoded once, the same read-only bytes are sent to every player
+                ByteBuffer encoded = encode(message);
                 for (String player : players) {
                     if((skipLeader && player.equals(players.get(leader))) ||
                             (skipWordPicker && wordPicker != null && player.equals(players.get(wordPicker)))) {
                         continue;
                     }
                     else {
-                        GameThread playerThread = playerThreads.get(player);
-                        playerThread.respond(message);
+                        PlayerSession playerThread = playerThreads.get(player);
+                        playerThread.send(encoded);
                     }
                 }
             }
@@ -966,22 +2016,41 @@ public class GameServer implements Server {
                     playerThreads.get(player).getPlayer().leaveGame(gameId);
                 }
             }
+            if (wordIndexKey != null) {
+                indexCache.release(wordIndexKey);
+                wordIndexKey = null;
+            }
         }
 
         /**
-         * Uploads the file to the game and responds to all players as per the requirement.
-         * @param fullCommand command from the player
-         * @throws IOException thrown if there is an error in sending the response to the player
+         * Starts uploading a file to the game.
+         * The payload is tokenized as it is streamed in; once it is complete the file becomes the file of the running game.
+         * @param fileName name of the file being uploaded
+         * @param size declared size of the payload in bytes, compressed or not, which decides if it is indexed in parallel
+         * @param completion executor of the leader's session to complete the upload on once it is indexed on the
+         *                   index pool, or null if the thread receiving the upload may wait for the pool
+         * @return receiver of the payload
          */
-        public void uploadFile(String[] fullCommand) throws IOException {
+        public UploadSink uploadFile(String fileName, long size, Executor completion) {
+            return new FileUpload(fileName, size >= config.parallelIndexThreshold, completion);
+        }
 
-            StringBuilder fileContent = new StringBuilder();
-            for (int i = 4; i < fullCommand.length; i++) {
-                fileContent.append(fullCommand[i].toLowerCase()).append(" ");
+        /**
+         * Makes the uploaded file the file of the running game and responds to all players as per the requirement.
+         * The index of the previous file is released from the index cache.
+         * @param fileName name of the uploaded file
+         * @param index counts of the words of the uploaded file
+         * @param key key of the index in the index cache, or null if it isn't shared
+         * @throws IOException thrown if there is an error in sending the response to the player
+         */
+        private void completeUpload(String fileName, WordIndex index, String key) throws IOException {
+            System.out.println("File uploaded successfully with " + index.words() + " words, "
+                    + index.distinctWords() + " distinct");
+            if (wordIndexKey != null) {
+                indexCache.release(wordIndexKey);
             }
-            System.out.println("File uploaded successfully");
-            this.currentFileContent = fileContent.toString();
-            String fileName = fullCommand[2];
+            this.wordIndex = index;
+            this.wordIndexKey = key;
             this.filesUsed.add(fileName);
             assignWordPicker();
             respondPlayers("Upload completed! Waiting for word selection.",false,true);
@@ -995,7 +2064,7 @@ public class GameServer implements Server {
          */
         private void respondWordPicker(String message) throws IOException {
             if (players != null && !players.isEmpty()) {
-                GameThread playerThread = playerThreads.get(players.get(wordPicker));
+                PlayerSession playerThread = playerThreads.get(players.get(wordPicker));
                 playerThread.respond(message);
             }
         }
@@ -1024,7 +2093,7 @@ public class GameServer implements Server {
          * @return true if the file is uploaded by the leader for the running game else false
          */
         public boolean isFileUploaded() {
-            return currentFileContent != null && !currentFileContent.isEmpty();
+            return wordIndex != null && !wordIndex.isEmpty();
         }
 
         /**
@@ -1045,28 +2114,24 @@ public class GameServer implements Server {
         }
 
         /**
-         * Checks if the word picked by the word picker is not used previously and present in the file at least once.
+         * Checks if the word picked by the word picker is not used previously and present in the file at least once
+         * as a whole word, in any case.
          * @param randomWord selected by the word picker word to be checked
          * @return true if the word is not already picked and is present in the uploaded file else false
          */
         public boolean isValidWord(String randomWord) {
-            return !pickedWords.contains(randomWord) && currentFileContent != null && currentFileContent.contains(randomWord.toLowerCase());
+            return !pickedWords.contains(randomWord.toLowerCase(Locale.ROOT)) && wordIndex != null && wordIndex.count(randomWord) > 0;
         }
 
         /**
          * Adds the word picked by the word picker to the list of picked words and sets the value to currentWord.
-         * It also calculates the count of the word in the uploaded file.
+         * It also looks up the count of the word in the uploaded file.
          * @param randomWord selected by the word picker word to be added
          */
         public void addToPickedWords(String randomWord) {
-            pickedWords.add(randomWord);
+            pickedWords.add(randomWord.toLowerCase(Locale.ROOT));
             currentWord = randomWord;
-
-            Pattern pattern = Pattern.compile("\\b" + Pattern.quote(currentWord) + "\\b");
-            Matcher matcher = pattern.matcher(currentFileContent);
-            while (matcher.find()) {
-                currentWordOccurrenceCount++;
-            }
+            currentWordOccurrenceCount = wordIndex.count(randomWord);
             System.out.println("Word selected is "+currentWord+" and available count is "+currentWordOccurrenceCount);
         }
 
@@ -1104,11 +2169,12 @@ public class GameServer implements Server {
                     }
                 }
                 System.out.println("Player " + winner + " won with difference " + minDifference + " wins!");
+                ByteBuffer lose = encode("Sorry you lose! Better luck next time.");
                 for (String player : players) {
                     if (winner.equals(player))
                         playerThreads.get(player).respond("Congratulations you are the winner!");
                     else
-                        playerThreads.get(player).respond("Sorry you lose! Better luck next time.");
+                        playerThreads.get(player).send(lose);
                 }
                 respondLeader("Game " + gameId + " complete. Do you want to restart or close the game?");
             }
@@ -1167,6 +2233,237 @@ public class GameServer implements Server {
         public String getCurrentlyUploadedFile() {
             return filesUsed.get(filesUsed.size()-1);
         }
+
+        /**
+         * FileUpload receives the payload of a FILE_UPLOAD as it is streamed in.
+         * <p>
+         * The bytes are split into words incrementally by a {@link WordTokenizer} and counted in a {@link WordIndex},
+         * so the text is never held as a whole line, an array of words or a String, and only the distinct words are
+         * kept once the upload is complete. A large payload is rather indexed by a {@link ParallelIndexer}. With a
+         * spool directory, the payload is rather written to a {@link UploadSpool} file of its own and indexed from its
+         * mapping once it is complete. The payload is hashed as it arrives, so a game uploading the same content as
+         * another one shares its index from the {@link IndexCache}.
+         */
+        private class FileUpload implements UploadSink {
+            /**
+             * Name of the file being uploaded.
+             */
+            private final String fileName;
+            /**
+             * Flag to identify if the payload is large enough to be indexed in parallel.
+             */
+            private final boolean large;
+            /**
+             * Counts of the words received so far.
+             */
+            private final WordIndex index = new WordIndex();
+            /**
+             * Splitter of the payload into the words of the index.
+             */
+            private final WordTokenizer tokenizer = new WordTokenizer(index, wordScanner);
+            /**
+             * File of the upload the payload is spooled to, or null to index the payload as it is received.
+             */
+            private final UploadSpool spool;
+            /**
+             * Indexer of a large payload on the index pool while it is received, or null.
+             */
+            private final ParallelIndexer parallelIndexer;
+            /**
+             * Executor the upload is completed on once indexed on the index pool, or null to wait for the pool.
+             */
+            private final Executor completion;
+            /**
+             * Hash of the payload received so far, or null if the index isn't shared.
+             */
+            private final MessageDigest digest;
+            /**
+             * Flag set if the payload couldn't be written to the spool file.
+             */
+            private boolean spoolFailed;
+            /**
+             * Number of payload bytes received so far.
+             */
+            private long received;
+
+            /**
+             * Constructor to create a FileUpload.
+             * @param fileName name of the file being uploaded
+             * @param large true if the payload is large enough to be indexed in parallel
+             * @param completion executor the upload is completed on once indexed on the index pool, or null to wait
+             */
+            FileUpload(String fileName, boolean large, Executor completion) {
+                this.fileName = fileName;
+                this.large = large;
+                this.completion = completion;
+                UploadSpool spool = null;
+                if (config.spoolDirectory != null) {
+                    try {
+                        spool = new UploadSpool(config.spoolDirectory);
+                    } catch (IOException e) {
+                        // indexed as it is received instead
+                        System.out.println("Exception caught " + e.getMessage());
+                    }
+                }
+                this.spool = spool;
+                this.parallelIndexer = spool == null && large
+                        ? new ParallelIndexer(indexPool, wordScanner, completion == null) : null;
+                this.digest = config.indexCache ? IndexCache.newDigest() : null;
+            }
+
+            /**
+             * Splits the next chunk of the payload into words, or spools it.
+             * @param chunk bytes of the payload
+             */
+            public void write(ByteBuffer chunk) {
+                received += chunk.remaining();
+                if (received > config.maxUploadBytes) {
+                    chunk.position(chunk.limit());
+                    return;
+                }
+                if (digest != null) {
+                    // the sinks below consume the chunk
+                    digest.update(chunk.duplicate());
+                }
+                if (spool != null) {
+                    if (!spoolFailed) {
+                        try {
+                            spool.write(chunk);
+                        } catch (IOException e) {
+                            System.out.println("Exception caught " + e.getMessage());
+                            spoolFailed = true;
+                        }
+                    }
+                    chunk.position(chunk.limit());
+                } else if (parallelIndexer != null) {
+                    parallelIndexer.write(chunk);
+                } else {
+                    tokenizer.write(chunk);
+                }
+            }
+
+            /**
+             * Completes the upload, unless the payload streamed up to the end of the line was too large.
+             * If the index cache holds the index of the same payload, that index is shared and the payload isn't
+             * indexed any further. A spooled or large payload is indexed on the index pool, and unless the thread
+             * receiving it may wait, the upload is completed later on the completion executor.
+             * @throws IOException thrown if there is an error in sending the response to the player
+             */
+            public void finish() throws IOException {
+                if (received > config.maxUploadBytes) {
+                    discard();
+                    respondLeader("Upload failed! File " + fileName + " is larger than " + config.maxUploadBytes + " bytes.");
+                    return;
+                }
+                if (spool != null && spoolFailed) {
+                    discard();
+                    respondLeader("Upload failed! File " + fileName + " could not be stored.");
+                    return;
+                }
+                String key = digest == null ? null : IndexCache.key(digest);
+                WordIndex shared = key == null ? null : indexCache.acquire(key);
+                if (shared != null) {
+                    System.out.println("File " + fileName + " shares the index of an identical upload");
+                    discard();
+                    completeUpload(fileName, shared, key);
+                    return;
+                }
+                if (spool == null && parallelIndexer == null) {
+                    tokenizer.finish();
+                    complete(index, key);
+                } else if (completion == null) {
+                    complete(spool != null ? indexSpool() : parallelIndexer.finish(), key);
+                } else {
+                    CompletableFuture<WordIndex> indexing = spool != null
+                            ? CompletableFuture.supplyAsync(this::indexSpool, indexPool) : parallelIndexer.finishAsync();
+                    indexing.whenComplete((built, failure) -> completion.execute(() -> completeLater(built, failure, key)));
+                }
+            }
+
+            /**
+             * Indexes the spooled payload, on the index pool if it is large.
+             * @return index of the payload, or null if the spool file can't be read
+             */
+            private WordIndex indexSpool() {
+                try {
+                    return spool.index(large ? indexPool : null, wordScanner);
+                } catch (IOException e) {
+                    System.out.println("Exception caught " + e.getMessage());
+                    return null;
+                }
+            }
+
+            /**
+             * Makes the indexed payload the file of the running game, sharing its index if it is hashed.
+             * @param built index of the payload, or null if it couldn't be indexed
+             * @param key key of the payload in the index cache, or null if it isn't hashed
+             * @throws IOException thrown if there is an error in sending the response to the player
+             */
+            private void complete(WordIndex built, String key) throws IOException {
+                if (built == null) {
+                    discard();
+                    respondLeader("Upload failed! File " + fileName + " could not be stored.");
+                } else {
+                    completeUpload(fileName, key == null ? built : indexCache.share(key, built), key);
+                }
+            }
+
+            /**
+             * Completes the upload on the completion executor once the index pool has indexed it, unless the game
+             * has been closed meanwhile.
+             * @param built index of the payload, or null if it couldn't be indexed
+             * @param failure exception thrown while indexing, or null
+             * @param key key of the payload in the index cache, or null if it isn't hashed
+             */
+            private void completeLater(WordIndex built, Throwable failure, String key) {
+                try {
+                    if (failure != null) {
+                        failure.printStackTrace();
+                        built = null;
+                    }
+                    if (games.get(gameId) != Game.this) {
+                        discard();
+                        return;
+                    }
+                    complete(built, key);
+                } catch (IOException e) {
+                    System.out.println("Exception caught " + e.getMessage());
+                } catch (RuntimeException e) {
+                    // must not escape into the event loop
+                    e.printStackTrace();
+                }
+            }
+
+            /**
+             * Fails the upload, leaving the game waiting for another upload.
+             * @param reason why the upload failed
+             * @throws IOException thrown if there is an error in sending the response to the player
+             */
+            public void fail(String reason) throws IOException {
+                discard();
+                respondLeader("Upload failed! File " + fileName + " " + reason + ".");
+            }
+
+            /**
+             * Drops the upload when the connection of the leader is closed while the payload is streamed in.
+             */
+            public void abort() {
+                System.out.println("Upload of file " + fileName + " aborted for game " + gameId);
+                discard();
+            }
+
+            /**
+             * Drops the payload received so far, from the spool file or from the index pool, if it is still held.
+             */
+            private void discard() {
+                if (spool != null) {
+                    spool.discard();
+                }
+                if (parallelIndexer != null) {
+                    parallelIndexer.cancel();
+                }
+            }
+        }
     }
 }
 
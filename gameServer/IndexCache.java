@@ -0,0 +1,130 @@
+package gameServer;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+
+/**
+ * IndexCache shares the {@link WordIndex} of an upload between the games that upload the same content.
+ * <p>
+ * The payload of every upload is hashed with SHA-256 as it is received, and the hash is the key of its index, so two
+ * uploads share an index whenever their bytes are the same, whatever their file names. A hit skips the indexing of a
+ * spooled payload and cuts short the indexing of a large one; a smaller payload is tokenized as it arrives, so on a hit
+ * its own index is dropped for the shared one and only one copy of the counts is kept. An index is never written to
+ * once it is in the cache, and the games only read it. Every game holding an index holds a reference to it, released
+ * when the game gets another file or is closed, and the index leaves the cache with its last reference.
+ * <p>
+ * The cache is thread safe.
+ */
+final class IndexCache {
+    /**
+     * Algorithm hashing the payloads.
+     */
+    private static final String ALGORITHM = "SHA-256";
+
+    /**
+     * Shared indexes by the hash of their payload.
+     */
+    private final HashMap<String, Entry> entries = new HashMap<>();
+    /**
+     * Number of uploads that found their index in the cache.
+     */
+    private long hits;
+    /**
+     * Number of uploads that didn't.
+     */
+    private long misses;
+
+    /**
+     * Creates a digest hashing a payload into its key.
+     * @return new digest
+     */
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Completes the hash of a payload.
+     * @param digest digest the whole payload was fed to, reset afterwards
+     * @return key of the payload
+     */
+    static String key(MessageDigest digest) {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Looks up the index of a payload, taking a reference to it if it is cached.
+     * @param key key of the payload
+     * @return shared index, to be released with {@link #release(String)}, or null if the payload isn't cached
+     */
+    synchronized WordIndex acquire(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        entry.references++;
+        return entry.index;
+    }
+
+    /**
+     * Caches the index of a payload, taking a reference to it. If an identical payload was cached meanwhile, its
+     * index is shared instead.
+     * @param key key of the payload
+     * @param index index of the payload, not written to afterwards
+     * @return shared index, to be released with {@link #release(String)}
+     */
+    synchronized WordIndex share(String key, WordIndex index) {
+        Entry entry = entries.computeIfAbsent(key, k -> new Entry(index));
+        entry.references++;
+        return entry.index;
+    }
+
+    /**
+     * Releases a reference to a shared index, dropping the index with its last reference.
+     * @param key key of the payload
+     */
+    synchronized void release(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && --entry.references == 0) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Formats the occupancy of the cache for the log.
+     * @return occupancy as name=value pairs
+     */
+    public synchronized String toString() {
+        return "indexCacheEntries=" + entries.size() + " indexCacheHits=" + hits + " indexCacheMisses=" + misses;
+    }
+
+    /**
+     * Entry is a shared index with the number of games holding it.
+     */
+    private static final class Entry {
+        /**
+         * Shared index.
+         */
+        private final WordIndex index;
+        /**
+         * Number of references taken and not released yet.
+         */
+        private int references;
+
+        /**
+         * Constructor to create an Entry with no references.
+         * @param index shared index
+         */
+        Entry(WordIndex index) {
+            this.index = index;
+        }
+    }
+}
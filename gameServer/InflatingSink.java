@@ -0,0 +1,359 @@
+package gameServer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * InflatingSink decompresses a deflate or gzip compressed upload payload as it is streamed in.
+ * <p>
+ * Every compressed chunk is inflated into a small buffer that is handed to the next {@link UploadSink} as soon as
+ * it is full, so the decompressed text is never held as a whole. A deflate payload is a zlib stream, checked by
+ * the {@link Inflater} itself; the header and trailer of a gzip payload are parsed here, and the CRC-32 and length
+ * of every member are checked. Once more than the given number of bytes has been inflated the rest of the payload
+ * is skipped instead of inflated, so a small payload can't make the server inflate an unbounded text, and the next
+ * sink sees it is too large. A payload that isn't valid compressed data or ends before the compressed stream does
+ * fails the upload.
+ */
+final class InflatingSink implements UploadSink {
+    /**
+     * Size of the buffer the payload is inflated into.
+     */
+    private static final int OUTPUT_BUFFER_SIZE = 16 * 1024;
+    /**
+     * Length of the fixed part of a gzip header.
+     */
+    private static final int GZIP_FIXED_HEADER_BYTES = 10;
+    /**
+     * Length of a gzip trailer, the CRC-32 and the length of the member's data.
+     */
+    private static final int GZIP_TRAILER_BYTES = 8;
+    /**
+     * Longest gzip header accepted, with its extra field, file name and comment.
+     */
+    private static final int MAX_GZIP_HEADER_BYTES = 64 * 1024;
+    /**
+     * Flags of the optional parts of a gzip header.
+     */
+    private static final int FHCRC = 2, FEXTRA = 4, FNAME = 8, FCOMMENT = 16;
+
+    /**
+     * The enum represents what the next bytes of the payload are.
+     */
+    private enum State {
+        /**
+         * Bytes of a gzip member header.
+         */
+        HEADER,
+        /**
+         * Bytes of the compressed data.
+         */
+        DATA,
+        /**
+         * Bytes of a gzip member trailer.
+         */
+        TRAILER,
+        /**
+         * Bytes after the end of the compressed stream, which are ignored.
+         */
+        DONE
+    }
+
+    /**
+     * Receiver of the inflated payload.
+     */
+    private final UploadSink next;
+    /**
+     * Flag to identify if the payload is gzip rather than deflate.
+     */
+    private final boolean gzip;
+    /**
+     * Most inflated bytes handed to the next sink.
+     */
+    private final long maxInflatedBytes;
+    /**
+     * Decompressor of the deflate data.
+     */
+    private final Inflater inflater;
+    /**
+     * Buffer the payload is inflated into.
+     */
+    private final ByteBuffer output = ByteBuffer.allocate(OUTPUT_BUFFER_SIZE);
+    /**
+     * Checksum of the data inflated from the current gzip member.
+     */
+    private final CRC32 crc = new CRC32();
+    /**
+     * What the next bytes of the payload are.
+     */
+    private State state;
+    /**
+     * Bytes of the gzip header or trailer received so far.
+     */
+    private byte[] header = new byte[GZIP_FIXED_HEADER_BYTES];
+    /**
+     * Number of valid bytes in {@link #header}.
+     */
+    private int headerLength;
+    /**
+     * Number of bytes inflated from the current gzip member.
+     */
+    private long memberBytes;
+    /**
+     * Number of bytes inflated so far.
+     */
+    private long inflated;
+    /**
+     * Flag set once a complete gzip member has been received.
+     */
+    private boolean memberCompleted;
+    /**
+     * Reason the upload fails, or null while the payload is valid.
+     */
+    private String error;
+
+    /**
+     * Constructor to create an InflatingSink.
+     * @param next receiver of the inflated payload
+     * @param gzip true for a gzip payload, false for a deflate (zlib) payload
+     * @param maxInflatedBytes most bytes to inflate; any more are skipped, with one byte past the limit
+     *                         handed over so the next sink sees the payload is too large
+     */
+    InflatingSink(UploadSink next, boolean gzip, long maxInflatedBytes) {
+        this.next = next;
+        this.gzip = gzip;
+        this.maxInflatedBytes = maxInflatedBytes;
+        this.inflater = new Inflater(gzip);
+        this.state = gzip ? State.HEADER : State.DATA;
+    }
+
+    /**
+     * Inflates the next chunk of the payload and hands the inflated bytes to the next sink.
+     * @param chunk compressed bytes of the payload
+     * @throws IOException thrown if the inflated bytes can't be consumed
+     */
+    public void write(ByteBuffer chunk) throws IOException {
+        try {
+            while (chunk.hasRemaining() && error == null) {
+                switch (state) {
+                    case HEADER:
+                        readHeader(chunk);
+                        break;
+                    case DATA:
+                        inflate(chunk);
+                        break;
+                    case TRAILER:
+                        readTrailer(chunk);
+                        break;
+                    case DONE:
+                        chunk.position(chunk.limit());
+                        break;
+                }
+            }
+        } catch (DataFormatException e) {
+            error = "is not valid " + (gzip ? "gzip" : "deflate") + " data";
+        }
+        if (error != null) {
+            chunk.position(chunk.limit());
+        }
+    }
+
+    /**
+     * Completes the upload if the whole compressed stream has been received, else fails it.
+     * @throws IOException thrown if there is an error in sending the responses to the players
+     */
+    public void finish() throws IOException {
+        inflater.end();
+        boolean complete = gzip ? state == State.HEADER && headerLength == 0 && memberCompleted : state == State.DONE;
+        if (error != null) {
+            next.fail(error);
+        } else if (complete || inflated > maxInflatedBytes) {
+            next.finish();
+        } else {
+            next.fail("is truncated");
+        }
+    }
+
+    /**
+     * Fails the upload.
+     * @param reason why the upload failed, to be appended to the file name
+     * @throws IOException thrown if there is an error in sending the response to the player
+     */
+    public void fail(String reason) throws IOException {
+        inflater.end();
+        next.fail(reason);
+    }
+
+    /**
+     * Drops the upload, releasing the inflater.
+     */
+    public void abort() {
+        inflater.end();
+        next.abort();
+    }
+
+    /**
+     * Inflates the compressed data of the chunk until the chunk is consumed or the compressed stream ends.
+     * @param chunk compressed bytes of the payload
+     * @throws DataFormatException thrown if the bytes are not valid compressed data
+     * @throws IOException thrown if the inflated bytes can't be consumed
+     */
+    private void inflate(ByteBuffer chunk) throws DataFormatException, IOException {
+        if (inflated > maxInflatedBytes) {
+            // too large already, the rest is not worth inflating
+            chunk.position(chunk.limit());
+            return;
+        }
+        inflater.setInput(chunk);
+        while (true) {
+            int length = inflater.inflate(output);
+            if (length > 0) {
+                emit();
+            }
+            if (inflater.finished()) {
+                endData();
+                return;
+            }
+            if (inflated > maxInflatedBytes) {
+                chunk.position(chunk.limit());
+                return;
+            }
+            if (length == 0) {
+                if (inflater.needsDictionary()) {
+                    throw new DataFormatException("preset dictionary");
+                }
+                if (inflater.needsInput()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands the inflated bytes in the output buffer to the next sink, up to one byte past the limit.
+     * @throws IOException thrown if the inflated bytes can't be consumed
+     */
+    private void emit() throws IOException {
+        output.flip();
+        if (gzip) {
+            crc.update(output.duplicate());
+            memberBytes += output.remaining();
+        }
+        long allowed = maxInflatedBytes + 1 - inflated;
+        if (output.remaining() > allowed) {
+            output.limit(output.position() + (int) allowed);
+        }
+        inflated += output.remaining();
+        next.write(output);
+        output.clear();
+    }
+
+    /**
+     * Moves on after the end of the compressed data, to the gzip trailer or past the end of the payload.
+     */
+    private void endData() {
+        if (gzip) {
+            state = State.TRAILER;
+            headerLength = 0;
+            inflater.reset();
+        } else {
+            state = State.DONE;
+        }
+    }
+
+    /**
+     * Reads the bytes of a gzip member header and moves on to its data once the header is complete.
+     * @param chunk bytes of the payload
+     * @throws DataFormatException thrown if the header is not a valid gzip header
+     */
+    private void readHeader(ByteBuffer chunk) throws DataFormatException {
+        while (chunk.hasRemaining()) {
+            if (headerLength == MAX_GZIP_HEADER_BYTES) {
+                throw new DataFormatException("gzip header too long");
+            }
+            if (headerLength == header.length) {
+                header = Arrays.copyOf(header, Math.min(header.length * 2, MAX_GZIP_HEADER_BYTES));
+            }
+            header[headerLength++] = chunk.get();
+            if (headerLength == gzipHeaderLength()) {
+                headerLength = 0;
+                crc.reset();
+                memberBytes = 0;
+                state = State.DATA;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the length of the gzip header received so far.
+     * @return length of the complete header, or -1 if more bytes are needed to tell
+     * @throws DataFormatException thrown if the bytes are not a gzip header
+     */
+    private int gzipHeaderLength() throws DataFormatException {
+        if (headerLength >= 3 && ((header[0] & 0xFF) != 0x1F || (header[1] & 0xFF) != 0x8B || header[2] != 8)) {
+            throw new DataFormatException("not in gzip format");
+        }
+        if (headerLength < GZIP_FIXED_HEADER_BYTES) {
+            return -1;
+        }
+        int flags = header[3];
+        int length = GZIP_FIXED_HEADER_BYTES;
+        if ((flags & FEXTRA) != 0) {
+            if (headerLength < length + 2) {
+                return -1;
+            }
+            length += 2 + ((header[length] & 0xFF) | (header[length + 1] & 0xFF) << 8);
+        }
+        if ((flags & FNAME) != 0) {
+            length = endOfString(length);
+        }
+        if ((flags & FCOMMENT) != 0 && length > 0) {
+            length = endOfString(length);
+        }
+        if ((flags & FHCRC) != 0 && length > 0) {
+            length += 2;
+        }
+        return length > 0 && length <= headerLength ? length : -1;
+    }
+
+    /**
+     * Finds the end of a zero terminated string of the gzip header.
+     * @param start offset of the string in the header
+     * @return offset after the terminating zero, or -1 if it hasn't been received yet
+     */
+    private int endOfString(int start) {
+        for (int i = start; i < headerLength; i++) {
+            if (header[i] == 0) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads the trailer of a gzip member and checks it against the data inflated from the member.
+     * @param chunk bytes of the payload
+     * @throws DataFormatException thrown if the checksum or length doesn't match
+     */
+    private void readTrailer(ByteBuffer chunk) throws DataFormatException {
+        while (chunk.hasRemaining() && headerLength < GZIP_TRAILER_BYTES) {
+            header[headerLength++] = chunk.get();
+        }
+        if (headerLength < GZIP_TRAILER_BYTES) {
+            return;
+        }
+        ByteBuffer trailer = ByteBuffer.wrap(header, 0, GZIP_TRAILER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        if ((trailer.getInt() & 0xFFFFFFFFL) != crc.getValue() || trailer.getInt() != (int) memberBytes) {
+            throw new DataFormatException("corrupt gzip trailer");
+        }
+        headerLength = 0;
+        memberCompleted = true;
+        // another member may follow, as in concatenated gzip files
+        state = State.HEADER;
+    }
+}
@@ -0,0 +1,197 @@
+package gameServer;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * OutboundQueue holds the messages waiting to be written to one player's connection.
+ * <p>
+ * Any thread may queue a message without blocking; a single thread of the I/O layer drains the queue.
+ * The queue is bounded by the number of bytes waiting and by the age of the oldest message: a player
+ * that doesn't read fast enough to stay within the bounds is a slow consumer, and {@link #offer(ByteBuffer)}
+ * refuses the message so that the connection can be dropped instead of holding up the other players. A player
+ * that stops reading and is sent nothing more is caught by {@link #isStale()}, checked periodically.
+ */
+final class OutboundQueue {
+
+    /**
+     * Entry is a queued message with the time it was queued at.
+     */
+    private static final class Entry {
+        /**
+         * Encoded message.
+         */
+        private final ByteBuffer message;
+        /**
+         * Number of bytes of the message counted against the byte bound.
+         */
+        private final int length;
+        /**
+         * Time the message was queued at, in {@link System#nanoTime()} units.
+         */
+        private final long queuedAt;
+
+        /**
+         * Constructor to create an Entry.
+         * @param message encoded message
+         * @param queuedAt time the message was queued at
+         */
+        private Entry(ByteBuffer message, long queuedAt) {
+            this.message = message;
+            this.length = message.remaining();
+            this.queuedAt = queuedAt;
+        }
+    }
+
+    /**
+     * Most bytes allowed to wait in the queue.
+     */
+    private final long maxBytes;
+    /**
+     * Longest time in nanoseconds the oldest message may wait in the queue, or 0 for no limit.
+     */
+    private final long maxAgeNanos;
+    /**
+     * Queued messages in the order they are to be written.
+     */
+    private final Queue<Entry> entries = new ConcurrentLinkedQueue<>();
+    /**
+     * Number of bytes of the queued messages.
+     */
+    private final AtomicLong bytes = new AtomicLong();
+
+    /**
+     * Constructor to create an OutboundQueue.
+     * @param maxBytes most bytes allowed to wait in the queue
+     * @param maxAgeMillis longest time in milliseconds the oldest message may wait in the queue, or 0 for no limit
+     */
+    OutboundQueue(long maxBytes, long maxAgeMillis) {
+        this.maxBytes = maxBytes;
+        this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMillis);
+    }
+
+    /**
+     * Queues a message unless the player is not keeping up with the queued messages.
+     * @param message encoded message, which must not be modified afterwards
+     * @return true if the message has been queued, false if the queue is over its bounds
+     */
+    boolean offer(ByteBuffer message) {
+        long now = System.nanoTime();
+        if (isStale(now)) {
+            return false;
+        }
+        Entry entry = new Entry(message, now);
+        if (bytes.addAndGet(entry.length) > maxBytes) {
+            bytes.addAndGet(-entry.length);
+            return false;
+        }
+        entries.add(entry);
+        return true;
+    }
+
+    /**
+     * Checks if the oldest queued message has waited longer than the age bound.
+     * @return true if the player is not keeping up with the queued messages else false
+     */
+    boolean isStale() {
+        return isStale(System.nanoTime());
+    }
+
+    /**
+     * Checks if the oldest queued message has waited longer than the age bound.
+     * @param now current time in {@link System#nanoTime()} units
+     * @return true if the player is not keeping up with the queued messages else false
+     */
+    private boolean isStale(long now) {
+        Entry oldest = entries.peek();
+        return oldest != null && maxAgeNanos > 0 && now - oldest.queuedAt > maxAgeNanos;
+    }
+
+    /**
+     * Returns the oldest queued message without removing it.
+     * @return oldest message, or null if the queue is empty
+     */
+    ByteBuffer peek() {
+        Entry entry = entries.peek();
+        return entry == null ? null : entry.message;
+    }
+
+    /**
+     * Fills the batch with the oldest queued messages, without removing them.
+     * @param batch array to be filled from its start
+     * @return number of messages put into the batch
+     */
+    int peek(ByteBuffer[] batch) {
+        int count = 0;
+        for (Entry entry : entries) {
+            batch[count++] = entry.message;
+            if (count == batch.length) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Copies as many queued bytes as fit into the buffer, oldest first, and removes the messages copied
+     * completely. A message copied in part stays at the head of the queue with its position advanced,
+     * so the queued messages must be views owned by this queue.
+     * @param target buffer to be filled from its position
+     * @return number of bytes copied
+     */
+    int drainTo(ByteBuffer target) {
+        int copied = 0;
+        Entry entry;
+        while (target.hasRemaining() && (entry = entries.peek()) != null) {
+            ByteBuffer message = entry.message;
+            int length = Math.min(message.remaining(), target.remaining());
+            target.put(target.position(), message, message.position(), length);
+            target.position(target.position() + length);
+            message.position(message.position() + length);
+            copied += length;
+            if (!message.hasRemaining()) {
+                poll();
+            }
+        }
+        return copied;
+    }
+
+    /**
+     * Removes the oldest queued message once it has been written.
+     */
+    void poll() {
+        Entry entry = entries.poll();
+        if (entry != null) {
+            bytes.addAndGet(-entry.length);
+        }
+    }
+
+    /**
+     * Checks if there are no messages waiting.
+     * @return true if the queue is empty else false
+     */
+    boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Returns the number of bytes of the queued messages.
+     * @return number of bytes waiting
+     */
+    long bytes() {
+        return bytes.get();
+    }
+
+    /**
+     * Drops all the queued messages.
+     */
+    void clear() {
+        Entry entry;
+        while ((entry = entries.poll()) != null) {
+            bytes.addAndGet(-entry.length);
+        }
+    }
+}
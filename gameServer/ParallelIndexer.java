@@ -0,0 +1,251 @@
+package gameServer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * ParallelIndexer builds the {@link WordIndex} of a large upload on a fork-join pool while it is streamed in.
+ * <p>
+ * The payload is gathered into segments of a few MiB. A full segment is cut after its last ASCII separator, so no
+ * word is cut, and handed to the pool as a task that keeps splitting its part at separators near the middle until
+ * the parts are small enough to be tokenized on their own, each into its own index; the indexes of the parts are
+ * then merged up the tree. The indexes of the segments are merged in order on the thread receiving the upload, so
+ * the result counts exactly the words the sequential {@link WordTokenizer} would. The rest of the segment, the
+ * start of a word, begins the next one.
+ * <p>
+ * Segments are indexed while the next ones are received, and at most two per thread of the pool are pending: the
+ * thread receiving the upload merges the oldest one before gathering another, so a slow pool holds the upload back
+ * rather than the text piling up. An event loop receiving the upload must not wait for the pool, so it only merges
+ * the segments already indexed, the pending ones being bounded by the maximum upload size instead, and the last
+ * segments are merged on the pool by {@link #finishAsync()}.
+ * <p>
+ * A payload already stored, e.g. spooled to a mapped file, is indexed as one task with {@link #index}.
+ * <p>
+ * The indexer is not thread safe; it is fed by the thread receiving the upload.
+ */
+final class ParallelIndexer {
+    /**
+     * Size of the segments handed to the pool.
+     */
+    static final int SEGMENT_SIZE = 4 * 1024 * 1024;
+    /**
+     * Size of the parts a segment is split into before they are tokenized.
+     */
+    static final int LEAF_SIZE = 256 * 1024;
+
+    /**
+     * Pool the segments are indexed on.
+     */
+    private final ForkJoinPool pool;
+    /**
+     * Backend of the tokenizers of the parts, or null to scan a byte at a time.
+     */
+    private final WordScanner scanner;
+    /**
+     * Flag to identify if the thread receiving the upload may wait for the pool.
+     */
+    private final boolean mayBlock;
+    /**
+     * Tasks indexing the segments handed to the pool, oldest first.
+     */
+    private final ArrayDeque<ForkJoinTask<WordIndex>> pending = new ArrayDeque<>();
+    /**
+     * Index of the segments merged so far.
+     */
+    private final WordIndex index = new WordIndex();
+    /**
+     * Segment being gathered.
+     */
+    private byte[] segment = new byte[SEGMENT_SIZE];
+    /**
+     * Number of valid bytes in {@link #segment}.
+     */
+    private int length;
+
+    /**
+     * Constructor to create a ParallelIndexer.
+     * @param pool pool the segments are indexed on
+     * @param scanner backend of the tokenizers of the parts, or null to scan a byte at a time
+     * @param mayBlock false if the thread receiving the upload is an event loop, which must not wait for the pool
+     */
+    ParallelIndexer(ForkJoinPool pool, WordScanner scanner, boolean mayBlock) {
+        this.pool = pool;
+        this.scanner = scanner;
+        this.mayBlock = mayBlock;
+    }
+
+    /**
+     * Indexes a whole text on a pool, splitting it at separators until the parts are small enough.
+     * @param pool pool the text is indexed on
+     * @param text bytes of the text between its position and limit, not written to while they are indexed
+     * @param scanner backend of the tokenizers of the parts, or null to scan a byte at a time
+     * @return index of the text
+     */
+    static WordIndex index(ForkJoinPool pool, ByteBuffer text, WordScanner scanner) {
+        ByteBuffer slice = text.slice();
+        return pool.invoke(new IndexTask(slice, 0, slice.limit(), scanner));
+    }
+
+    /**
+     * Gathers the next chunk of the payload, handing every segment it fills to the pool.
+     * @param chunk bytes of the payload between its position and limit, all consumed
+     */
+    void write(ByteBuffer chunk) {
+        while (chunk.hasRemaining()) {
+            int copied = Math.min(chunk.remaining(), segment.length - length);
+            chunk.get(segment, length, copied);
+            length += copied;
+            if (length == segment.length) {
+                submitSegment();
+            }
+        }
+    }
+
+    /**
+     * Ends the payload, waits for all the segments to be indexed and merges them.
+     * @return index of the whole payload
+     */
+    WordIndex finish() {
+        if (length > 0) {
+            submit(segment, length);
+            segment = null;
+            length = 0;
+        }
+        while (!pending.isEmpty()) {
+            index.addAll(pending.removeFirst().join());
+        }
+        return index;
+    }
+
+    /**
+     * Ends the payload and merges the segments on the pool, without waiting for them.
+     * @return future completed with the index of the whole payload on a thread of the pool
+     */
+    CompletableFuture<WordIndex> finishAsync() {
+        return CompletableFuture.supplyAsync(this::finish, pool);
+    }
+
+    /**
+     * Drops the payload, cancelling the segments that are not indexed yet.
+     */
+    void cancel() {
+        for (ForkJoinTask<WordIndex> task : pending) {
+            task.cancel(false);
+        }
+        pending.clear();
+        segment = null;
+        length = 0;
+    }
+
+    /**
+     * Hands the full segment up to its last separator to the pool and starts the next segment with the rest.
+     */
+    private void submitSegment() {
+        int cut = length;
+        while (cut > 0 && !WordTokenizer.isSeparator(segment[cut - 1])) {
+            cut--;
+        }
+        if (cut == 0) {
+            // a single word fills the segment, it can only grow until the word ends
+            segment = Arrays.copyOf(segment, segment.length * 2);
+            return;
+        }
+        byte[] next = new byte[Math.max(SEGMENT_SIZE, 2 * (length - cut))];
+        System.arraycopy(segment, cut, next, 0, length - cut);
+        submit(segment, cut);
+        length -= cut;
+        segment = next;
+    }
+
+    /**
+     * Hands the start of a segment to the pool, first merging the oldest segments already indexed, and waiting for
+     * the oldest one if too many are pending and the thread may block.
+     * @param text segment, no longer written to
+     * @param end end of the text to be indexed
+     */
+    private void submit(byte[] text, int end) {
+        while (!pending.isEmpty()
+                && (pending.peekFirst().isDone() || mayBlock && pending.size() >= 2 * pool.getParallelism())) {
+            index.addAll(pending.removeFirst().join());
+        }
+        pending.addLast(pool.submit(new IndexTask(ByteBuffer.wrap(text), 0, end, scanner)));
+    }
+
+    /**
+     * IndexTask indexes a part of a text, splitting it between two subtasks while it is larger than a leaf.
+     * Like every ForkJoinTask it is Serializable, but it is never serialized.
+     */
+    @SuppressWarnings("serial")
+    private static final class IndexTask extends RecursiveTask<WordIndex> {
+        /**
+         * Bytes of the text, read with absolute offsets only so the subtasks can share it.
+         */
+        private final ByteBuffer text;
+        /**
+         * Start of the part.
+         */
+        private final int from;
+        /**
+         * End of the part.
+         */
+        private final int to;
+        /**
+         * Backend of the tokenizer, or null to scan a byte at a time.
+         */
+        private final WordScanner scanner;
+
+        /**
+         * Constructor to create an IndexTask.
+         * @param text bytes of the text
+         * @param from start of the part, at the start of the text or after a separator
+         * @param to end of the part, at the end of the text or after a separator
+         * @param scanner backend of the tokenizer, or null to scan a byte at a time
+         */
+        IndexTask(ByteBuffer text, int from, int to, WordScanner scanner) {
+            this.text = text;
+            this.from = from;
+            this.to = to;
+            this.scanner = scanner;
+        }
+
+        /**
+         * Indexes the part.
+         * @return index of the words of the part
+         */
+        @Override
+        protected WordIndex compute() {
+            int middle = to - from > LEAF_SIZE ? split() : -1;
+            if (middle < 0) {
+                WordIndex index = new WordIndex();
+                WordTokenizer tokenizer = new WordTokenizer(index, scanner);
+                tokenizer.write(text.slice(from, to - from));
+                tokenizer.finish();
+                return index;
+            }
+            IndexTask left = new IndexTask(text, from, middle, scanner);
+            left.fork();
+            WordIndex right = new IndexTask(text, middle, to, scanner).compute();
+            WordIndex index = left.join();
+            index.addAll(right);
+            return index;
+        }
+
+        /**
+         * Finds where to split the part, after the first separator from the middle on.
+         * @return offset after the separator, or -1 if the part has no separator past its middle
+         */
+        private int split() {
+            for (int i = from + (to - from) / 2; i < to - 1; i++) {
+                if (WordTokenizer.isSeparator(text.get(i))) {
+                    return i + 1;
+                }
+            }
+            return -1;
+        }
+    }
+}
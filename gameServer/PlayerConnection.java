@@ -0,0 +1,41 @@
+package gameServer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The interface represents a non-blocking connection to a player, as seen by the player session.
+ * <p>
+ * The connection reads and frames the commands itself and dispatches them to its {@link ConnectionHandler};
+ * the session only sends messages and closes the connection, from any thread and without blocking.
+ */
+interface PlayerConnection {
+
+    /**
+     * Queues a message for the player without blocking.
+     * @param message encoded message, including the line terminator, owned by the connection from now on
+     */
+    void send(ByteBuffer message);
+
+    /**
+     * Closes the connection once all the queued messages have been written.
+     */
+    void close();
+
+    /**
+     * Closes the connection of an idle or slow player, dropping the queued messages,
+     * and handles the player disconnection.
+     */
+    void evict();
+
+    /**
+     * Checks if the oldest queued message has waited longer than the player is allowed to lag behind.
+     * @return true if the player is a slow consumer else false
+     */
+    boolean isStale();
+
+    /**
+     * Runs a task in the context the connection dispatches its commands in, without blocking the caller.
+     * @param task task to be run, which must not throw
+     */
+    void execute(Runnable task);
+}
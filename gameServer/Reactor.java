@@ -0,0 +1,194 @@
+package gameServer;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Reactor is a single threaded event loop around one {@link Selector}.
+ * <p>
+ * Reading, framing and dispatching the commands of all the channels registered with the reactor
+ * happens on the reactor's own thread, so a handful of threads serve any number of players.
+ * Each reactor owns its selector and its set of connections; other threads only hand work over
+ * to it through a lock-free task queue, with {@link #register(SocketChannel)} and {@link #execute(Runnable)}.
+ */
+final class Reactor implements Runnable {
+    /**
+     * Game server creating the player sessions for accepted channels.
+     */
+    private final GameServer gameServer;
+    /**
+     * Selector multiplexing all the channels of this reactor.
+     */
+    private final Selector selector;
+    /**
+     * Tasks submitted by other threads to be run on the reactor thread.
+     */
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    /**
+     * Thread running the event loop.
+     */
+    private volatile Thread thread;
+    /**
+     * Flag to stop the event loop.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Constructor to create a Reactor.
+     * @param gameServer game server creating the player sessions for accepted channels
+     * @throws IOException thrown if the selector can't be opened
+     */
+    Reactor(GameServer gameServer) throws IOException {
+        this.gameServer = gameServer;
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Hands an accepted channel over to this reactor. It is registered by the reactor thread,
+     * so the acceptor never touches the reactor's selector.
+     * @param channel accepted channel
+     */
+    void register(SocketChannel channel) {
+        executeLater(() -> {
+            try {
+                attach(channel);
+            } catch (IOException e) {
+                System.out.println("Exception caught " + e.getMessage());
+                gameServer.admission().release();
+                try {
+                    channel.close();
+                } catch (IOException closeException) {
+                    closeException.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs the task on the reactor thread, immediately if called from it.
+     * @param task task to be run
+     */
+    void execute(Runnable task) {
+        if (Thread.currentThread() == thread) {
+            task.run();
+        } else {
+            executeLater(task);
+        }
+    }
+
+    /**
+     * Runs the task on the reactor thread after the keys selected so far have been processed.
+     * Called from the reactor thread itself, the task runs at the end of the current dispatch cycle.
+     * @param task task to be run
+     */
+    void executeLater(Runnable task) {
+        tasks.add(task);
+        if (Thread.currentThread() != thread) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Runs the event loop until the reactor is closed.
+     */
+    public void run() {
+        thread = Thread.currentThread();
+        try {
+            while (running) {
+                selector.select();
+                runTasks();
+                Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    if (key.isValid()) {
+                        process(key);
+                    }
+                }
+                // the flushes queued while dispatching, so each connection is written once per cycle
+                runTasks();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running) {
+                e.printStackTrace();
+            }
+        } finally {
+            closeChannels();
+        }
+    }
+
+    /**
+     * Handles the ready operations of one selected key.
+     * @param key selected key
+     */
+    private void process(SelectionKey key) {
+        ChannelConnection connection = (ChannelConnection) key.attachment();
+        try {
+            if (key.isReadable()) {
+                connection.onReadable();
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.onWritable();
+            }
+        } catch (IOException e) {
+            System.out.println("Exception caught " + e.getMessage());
+            connection.closeAndDisconnect();
+        } catch (RuntimeException e) {
+            // a failing command must only cost its own connection, not the whole event loop
+            e.printStackTrace();
+            connection.closeAndDisconnect();
+        }
+    }
+
+    /**
+     * Registers an accepted channel with the selector and attaches a new player session to it.
+     * @param channel accepted channel
+     * @throws IOException thrown if the channel can't be registered
+     */
+    private void attach(SocketChannel channel) throws IOException {
+        channel.configureBlocking(false);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        ChannelConnection connection = new ChannelConnection(this, channel, key, gameServer.bufferPool(),
+                gameServer.newOutboundQueue(), gameServer.metrics());
+        connection.setHandler(gameServer.openSession(connection));
+        key.attach(connection);
+    }
+
+    /**
+     * Runs the tasks submitted by other threads.
+     */
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    /**
+     * Closes every channel registered with the selector and the selector itself.
+     */
+    private void closeChannels() {
+        try {
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops the event loop and closes all its channels.
+     */
+    void close() {
+        running = false;
+        selector.wakeup();
+    }
+}
@@ -0,0 +1,181 @@
+package gameServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Non-blocking front end of the game server.
+ * <p>
+ * Instead of a thread per player, a dedicated acceptor thread accepts the connections and hands them
+ * round-robin to a fixed set of {@link Reactor} worker threads. With several listeners, each listening
+ * socket shares the port through SO_REUSEPORT and has its own acceptor thread, and so does a Unix domain
+ * socket the co-located players can connect through. Each worker owns its own selector and
+ * reads, frames and dispatches the commands of its players over non-blocking socket channels, so a
+ * burst of reconnections is spread over all the cores. The commands are processed by the same player
+ * sessions as in the thread-per-connection mode.
+ */
+final class SelectorServer implements FrontEnd {
+    /**
+     * Game server owning the games and players.
+     */
+    private final GameServer gameServer;
+    /**
+     * Port number for the server to listen on.
+     */
+    private final int port;
+    /**
+     * Number of worker event loops.
+     */
+    private final int ioThreads;
+    /**
+     * Length of the queue of connections waiting to be accepted.
+     */
+    private final int backlog;
+    /**
+     * Number of sockets listening on the port.
+     */
+    private final int listeners;
+    /**
+     * Server channel bound to a Unix domain socket path, or null if the server only listens on the port.
+     */
+    private final ServerSocketChannel unixListener;
+    /**
+     * Worker event loops serving the connections.
+     */
+    private Reactor[] reactors;
+    /**
+     * Setup to accept connections from players, one channel per listener.
+     */
+    private final List<ServerSocketChannel> serverChannels = new CopyOnWriteArrayList<>();
+
+    /**
+     * Constructor to create a SelectorServer.
+     * @param gameServer game server owning the games and players
+     * @param port port number for the server to listen on
+     * @param ioThreads number of worker event loops
+     * @param backlog length of the queue of connections waiting to be accepted
+     * @param listeners number of sockets listening on the port
+     * @param unixListener server channel bound to a Unix domain socket path, or null for none
+     */
+    SelectorServer(GameServer gameServer, int port, int ioThreads, int backlog, int listeners,
+                   ServerSocketChannel unixListener) {
+        this.gameServer = gameServer;
+        this.port = port;
+        this.ioThreads = ioThreads;
+        this.backlog = backlog;
+        this.listeners = listeners;
+        this.unixListener = unixListener;
+    }
+
+    /**
+     * Binds the listeners, starts the worker event loops and runs the accept loop of the first listener on the
+     * calling thread. The event loops are only started once every listener is bound, and are closed again if they
+     * can't all be opened, so a server that fails to start leaves no thread behind to keep the JVM alive.
+     */
+    public void run() {
+        try {
+            ServerSocketChannel first = openServerChannel(listeners > 1);
+            int count = GameServer.reusePortListeners(listeners, first.supportedOptions());
+            ServerSocketChannel[] others = new ServerSocketChannel[count - 1];
+            for (int i = 1; i < count; i++) {
+                others[i - 1] = openServerChannel(true);
+            }
+            reactors = new Reactor[ioThreads];
+            for (int i = 0; i < ioThreads; i++) {
+                reactors[i] = new Reactor(gameServer);
+                new Thread(reactors[i], "reactor-" + i).start();
+            }
+            for (int i = 1; i < count; i++) {
+                ServerSocketChannel listener = others[i - 1];
+                int start = i;
+                new Thread(() -> acceptPlayers(listener, start), "acceptor-" + i).start();
+            }
+            if (unixListener != null) {
+                serverChannels.add(unixListener);
+                new Thread(() -> acceptPlayers(unixListener, 0), "unix-acceptor").start();
+            }
+            acceptPlayers(first, 0);
+        } catch (IOException ioException) {
+            ioException.printStackTrace();
+            close();
+        }
+    }
+
+    /**
+     * Opens a server channel listening on the port of the server.
+     * @param reusePort true to share the port with the other listeners through SO_REUSEPORT
+     * @return bound server channel
+     * @throws IOException thrown if the channel can't be bound
+     */
+    private ServerSocketChannel openServerChannel(boolean reusePort) throws IOException {
+        ServerSocketChannel listener = ServerSocketChannel.open();
+        serverChannels.add(listener);
+        if (reusePort && listener.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+            listener.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        }
+        listener.bind(new InetSocketAddress(port), backlog);
+        return listener;
+    }
+
+    /**
+     * Runs the accept loop of one listener, handing the connections round-robin to the event loops.
+     * Connections over the connection cap are rejected by the acceptor, which also waits for the accept
+     * tokens, so the event loops only ever see admitted connections.
+     * @param serverChannel channel to accept the connections from
+     * @param next index of the event loop to hand the first connection to
+     */
+    private void acceptPlayers(ServerSocketChannel serverChannel, int next) {
+        try {
+            AdmissionControl admission = gameServer.admission();
+            next %= reactors.length;
+            while (true) {
+                SocketChannel channel = serverChannel.accept();
+                if (!admission.admit()) {
+                    AdmissionControl.rejectBusy(channel);
+                    continue;
+                }
+                admission.awaitToken();
+                reactors[next].register(channel);
+                next = (next + 1) % reactors.length;
+            }
+        } catch (IOException ioException) {
+            if (serverChannel.isOpen()) {
+                ioException.printStackTrace();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops accepting connections; the acceptor threads end and the event loops keep serving the open connections.
+     */
+    public void stopAccepting() {
+        try {
+            for (ServerSocketChannel serverChannel : serverChannels) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops accepting connections and closes the event loops with all their connections.
+     */
+    public void close() {
+        stopAccepting();
+        if (reactors != null) {
+            for (Reactor reactor : reactors) {
+                if (reactor != null) {
+                    reactor.close();
+                }
+            }
+        }
+    }
+}
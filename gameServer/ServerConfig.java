@@ -0,0 +1,278 @@
+package gameServer;
+
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Startup options of the game server.
+ * <p>
+ * The test suite starts the server as {@code java gameServer.GameServer <port>}, so every option
+ * is read from a {@code gameServer.*} system property and defaults to the original behaviour, e.g.
+ * {@code java -DgameServer.mode=nio gameServer.GameServer 14736}.
+ */
+final class ServerConfig {
+
+    /**
+     * The enum represents the way player connections are served.
+     */
+    enum Mode {
+        /**
+         * One platform thread with blocking socket streams per player.
+         */
+        THREAD,
+        /**
+         * One virtual thread with blocking socket streams per player.
+         */
+        VIRTUAL,
+        /**
+         * Non-blocking socket channels multiplexed over a selector event loop.
+         */
+        NIO,
+        /**
+         * Asynchronous socket channels served by completion handlers on a shared channel group.
+         */
+        ASYNC
+    }
+
+    /**
+     * The enum represents the backend tokenizing the uploads.
+     */
+    enum Tokenizer {
+        /**
+         * The Vector API backend if this JVM can run it, else the scalar one.
+         */
+        AUTO,
+        /**
+         * Byte at a time lookups in the class and lower case tables.
+         */
+        SCALAR,
+        /**
+         * Classification of many bytes at a time with the incubating Vector API, which needs the classes of the
+         * {@code simd} source root and {@code --add-modules jdk.incubator.vector}.
+         */
+        VECTOR
+    }
+
+    /**
+     * How player connections are served, from {@code gameServer.mode}.
+     */
+    final Mode mode;
+    /**
+     * Number of event loop threads serving the connections in the nio mode, or of channel group threads
+     * in the async mode, from {@code gameServer.ioThreads}.
+     * Defaults to the number of available processors.
+     */
+    final int ioThreads;
+    /**
+     * Largest FILE_UPLOAD payload accepted in bytes, from {@code gameServer.maxUploadBytes}. Defaults to 64 MiB.
+     */
+    final long maxUploadBytes;
+    /**
+     * Time in milliseconds after which a connection that hasn't sent anything is closed, from
+     * {@code gameServer.idleTimeoutMillis}. Defaults to 0, which disables the idle detection as the original server
+     * never closed a silent connection.
+     */
+    final long idleTimeoutMillis;
+    /**
+     * Interval in milliseconds between the logs of the server metrics, from {@code gameServer.metricsIntervalMillis}.
+     * Defaults to 0, which only logs them when the server is closed.
+     */
+    final long metricsIntervalMillis;
+    /**
+     * Most response bytes waiting to be written to a player before it is disconnected as a slow consumer,
+     * from {@code gameServer.maxOutboundBytes}. Defaults to 4 MiB.
+     */
+    final long maxOutboundBytes;
+    /**
+     * Longest time in milliseconds a response may wait to be written to a player before it is disconnected
+     * as a slow consumer, from {@code gameServer.maxOutboundAgeMillis}. Defaults to 0, which doesn't bound the age of
+     * the responses, like the original server.
+     */
+    final long maxOutboundAgeMillis;
+    /**
+     * Most connections served at the same time, from {@code gameServer.maxConnections}; further connections are
+     * told the server is busy and closed. Defaults to 0, which doesn't limit them.
+     */
+    final int maxConnections;
+    /**
+     * Most connections accepted per second, from {@code gameServer.acceptRate}; faster connections wait in the
+     * listen backlog. Defaults to 0, which doesn't limit the rate.
+     */
+    final int acceptRate;
+    /**
+     * Most connections accepted at once above the accept rate after a quiet period, from
+     * {@code gameServer.acceptBurst}. Defaults to the accept rate.
+     */
+    final int acceptBurst;
+    /**
+     * Length of the queue of connections waiting to be accepted, from {@code gameServer.backlog}. Defaults to 50.
+     */
+    final int backlog;
+    /**
+     * Number of sockets listening on the port, each with its own acceptor, from {@code gameServer.listeners}.
+     * More than one listener shares the port with SO_REUSEPORT, so the kernel spreads the incoming connections
+     * over them. Defaults to 1.
+     */
+    final int listeners;
+    /**
+     * Capacity in bytes of the pooled buffers the nio and async connections are read into and written from,
+     * from {@code gameServer.bufferSize}. Defaults to 8 KiB.
+     */
+    final int bufferSize;
+    /**
+     * Path of a Unix domain socket the server also listens on for co-located clients, from
+     * {@code gameServer.unixSocketPath}. Defaults to none.
+     */
+    final Path unixSocketPath;
+    /**
+     * Longest time closing the server waits for the connections to drain, from {@code gameServer.drainTimeoutMillis}.
+     * Defaults to 5 seconds; 0 closes the connections right away.
+     */
+    final long drainTimeoutMillis;
+    /**
+     * Number of threads indexing large uploads, apart from the threads serving the connections, from
+     * {@code gameServer.indexParallelism}. Defaults to the number of available processors.
+     */
+    final int indexParallelism;
+    /**
+     * Declared payload size in bytes from which an upload is indexed in parallel rather than on the thread receiving
+     * it, from {@code gameServer.parallelIndexThreshold}. Defaults to 16 MiB.
+     */
+    final long parallelIndexThreshold;
+    /**
+     * Backend tokenizing the uploads, from {@code gameServer.tokenizer}. Defaults to {@link Tokenizer#AUTO}.
+     */
+    final Tokenizer tokenizer;
+    /**
+     * Directory the uploads are spooled to, a file per game, and indexed from through a memory mapping rather than as
+     * they are received, from {@code gameServer.spoolDirectory}. Defaults to none, which indexes them as they arrive.
+     */
+    final Path spoolDirectory;
+    /**
+     * Flag to hash every upload so games uploading the same content share one index, from
+     * {@code gameServer.indexCache}. Defaults to true.
+     */
+    final boolean indexCache;
+
+    /**
+     * Constructor to create a ServerConfig.
+     * @param properties properties to read the {@code gameServer.*} options from
+     * @throws IllegalArgumentException thrown if a property has an invalid value
+     */
+    ServerConfig(Properties properties) {
+        this.mode = Mode.valueOf(properties.getProperty("gameServer.mode", Mode.THREAD.name()).trim().toUpperCase(Locale.ROOT));
+        this.ioThreads = positiveInt(properties, "gameServer.ioThreads", Runtime.getRuntime().availableProcessors());
+        this.maxUploadBytes = positive(properties, "gameServer.maxUploadBytes", 64L * 1024 * 1024);
+        this.idleTimeoutMillis = nonNegative(properties, "gameServer.idleTimeoutMillis", 0);
+        this.metricsIntervalMillis = nonNegative(properties, "gameServer.metricsIntervalMillis", 0);
+        this.maxOutboundBytes = positive(properties, "gameServer.maxOutboundBytes", 4L * 1024 * 1024);
+        this.maxOutboundAgeMillis = nonNegative(properties, "gameServer.maxOutboundAgeMillis", 0);
+        this.maxConnections = nonNegativeInt(properties, "gameServer.maxConnections", 0);
+        this.acceptRate = nonNegativeInt(properties, "gameServer.acceptRate", 0);
+        this.acceptBurst = positiveInt(properties, "gameServer.acceptBurst", Math.max(acceptRate, 1));
+        this.backlog = positiveInt(properties, "gameServer.backlog", 50);
+        this.listeners = positiveInt(properties, "gameServer.listeners", 1);
+        this.bufferSize = positiveInt(properties, "gameServer.bufferSize", 8192);
+        String unixSocket = properties.getProperty("gameServer.unixSocketPath");
+        this.unixSocketPath = unixSocket == null || unixSocket.isBlank() ? null : Path.of(unixSocket.trim());
+        this.drainTimeoutMillis = nonNegative(properties, "gameServer.drainTimeoutMillis", 5000);
+        this.indexParallelism = positiveInt(properties, "gameServer.indexParallelism",
+                Runtime.getRuntime().availableProcessors());
+        this.parallelIndexThreshold = positive(properties, "gameServer.parallelIndexThreshold", 16L * 1024 * 1024);
+        this.tokenizer = Tokenizer.valueOf(
+                properties.getProperty("gameServer.tokenizer", Tokenizer.AUTO.name()).trim().toUpperCase(Locale.ROOT));
+        String spool = properties.getProperty("gameServer.spoolDirectory");
+        this.spoolDirectory = spool == null || spool.isBlank() ? null : Path.of(spool.trim());
+        this.indexCache = Boolean.parseBoolean(properties.getProperty("gameServer.indexCache", "true").trim());
+    }
+
+    /**
+     * Reads the configuration from the {@code gameServer.*} system properties.
+     * @return configuration with defaults for every property that is not set
+     * @throws IllegalArgumentException thrown if a property has an invalid value
+     */
+    static ServerConfig fromSystemProperties() {
+        return new ServerConfig(System.getProperties());
+    }
+
+    /**
+     * Reads a positive integer property.
+     * @param properties properties to read from
+     * @param name name of the property
+     * @param defaultValue value if the property is not set
+     * @return value of the property
+     * @throws IllegalArgumentException thrown if the value is not a positive integer
+     */
+    private static long positive(Properties properties, String name, long defaultValue) {
+        String value = properties.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        long parsed = Long.parseLong(value.trim());
+        if (parsed <= 0) {
+            throw new IllegalArgumentException(name + " must be positive: " + value);
+        }
+        return parsed;
+    }
+
+    /**
+     * Reads a positive integer property that must fit in an int.
+     * @param properties properties to read from
+     * @param name name of the property
+     * @param defaultValue value if the property is not set
+     * @return value of the property
+     * @throws IllegalArgumentException thrown if the value is not a positive integer or is too large
+     */
+    private static int positiveInt(Properties properties, String name, int defaultValue) {
+        return toInt(properties, name, positive(properties, name, defaultValue));
+    }
+
+    /**
+     * Reads a non-negative integer property that must fit in an int.
+     * @param properties properties to read from
+     * @param name name of the property
+     * @param defaultValue value if the property is not set
+     * @return value of the property
+     * @throws IllegalArgumentException thrown if the value is not a non-negative integer or is too large
+     */
+    private static int nonNegativeInt(Properties properties, String name, int defaultValue) {
+        return toInt(properties, name, nonNegative(properties, name, defaultValue));
+    }
+
+    /**
+     * Checks that the value of an integer property fits in an int.
+     * @param properties properties the value was read from
+     * @param name name of the property
+     * @param parsed value of the property
+     * @return value as an int
+     * @throws IllegalArgumentException thrown if the value is larger than {@link Integer#MAX_VALUE}
+     */
+    private static int toInt(Properties properties, String name, long parsed) {
+        if (parsed > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(name + " must be at most " + Integer.MAX_VALUE + ": "
+                    + properties.getProperty(name));
+        }
+        return (int) parsed;
+    }
+
+    /**
+     * Reads a non-negative integer property.
+     * @param properties properties to read from
+     * @param name name of the property
+     * @param defaultValue value if the property is not set
+     * @return value of the property
+     * @throws IllegalArgumentException thrown if the value is not a non-negative integer
+     */
+    private static long nonNegative(Properties properties, String name, long defaultValue) {
+        String value = properties.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        long parsed = Long.parseLong(value.trim());
+        if (parsed < 0) {
+            throw new IllegalArgumentException(name + " must not be negative: " + value);
+        }
+        return parsed;
+    }
+}
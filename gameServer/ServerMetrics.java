@@ -0,0 +1,147 @@
+package gameServer;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the work done by the game server, shared by all the connection threads.
+ * <p>
+ * The counters are {@link LongAdder}s so that updating them from many threads doesn't contend;
+ * a snapshot is logged periodically with {@code -DgameServer.metricsIntervalMillis} and when the server is closed.
+ */
+final class ServerMetrics {
+    /**
+     * Number of response messages queued for the players.
+     */
+    private final LongAdder responses = new LongAdder();
+    /**
+     * Number of writes of queued responses to the sockets.
+     */
+    private final LongAdder flushes = new LongAdder();
+    /**
+     * Number of players disconnected for not reading their responses fast enough.
+     */
+    private final LongAdder slowConsumersEvicted = new LongAdder();
+    /**
+     * Number of connections admitted by the admission control.
+     */
+    private final LongAdder connectionsAccepted = new LongAdder();
+    /**
+     * Number of connections rejected as busy over the connection cap.
+     */
+    private final LongAdder connectionsRejected = new LongAdder();
+    /**
+     * Number of admitted connections that had to wait for an accept token.
+     */
+    private final LongAdder connectionsQueued = new LongAdder();
+
+    /**
+     * Counts a response message queued for a player.
+     */
+    void responseQueued() {
+        responses.increment();
+    }
+
+    /**
+     * Counts a write of queued responses to a socket.
+     */
+    void flushed() {
+        flushes.increment();
+    }
+
+    /**
+     * Counts a player disconnected for not reading its responses fast enough.
+     */
+    void slowConsumerEvicted() {
+        slowConsumersEvicted.increment();
+    }
+
+    /**
+     * Counts a connection admitted by the admission control.
+     */
+    void connectionAccepted() {
+        connectionsAccepted.increment();
+    }
+
+    /**
+     * Counts a connection rejected as busy over the connection cap.
+     */
+    void connectionRejected() {
+        connectionsRejected.increment();
+    }
+
+    /**
+     * Counts an admitted connection that had to wait for an accept token.
+     */
+    void connectionQueued() {
+        connectionsQueued.increment();
+    }
+
+    /**
+     * Returns the number of connections admitted by the admission control.
+     * @return number of accepted connections
+     */
+    long connectionsAccepted() {
+        return connectionsAccepted.sum();
+    }
+
+    /**
+     * Returns the number of connections rejected as busy over the connection cap.
+     * @return number of rejected connections
+     */
+    long connectionsRejected() {
+        return connectionsRejected.sum();
+    }
+
+    /**
+     * Returns the number of admitted connections that had to wait for an accept token.
+     * @return number of queued connections
+     */
+    long connectionsQueued() {
+        return connectionsQueued.sum();
+    }
+
+    /**
+     * Returns the number of players disconnected for not reading their responses fast enough.
+     * @return number of slow consumers evicted
+     */
+    long slowConsumersEvicted() {
+        return slowConsumersEvicted.sum();
+    }
+
+    /**
+     * Returns the number of response messages queued for the players.
+     * @return number of responses
+     */
+    long responses() {
+        return responses.sum();
+    }
+
+    /**
+     * Returns the number of writes of queued responses to the sockets.
+     * @return number of flushes
+     */
+    long flushes() {
+        return flushes.sum();
+    }
+
+    /**
+     * Returns the number of socket writes saved by coalescing the responses,
+     * compared to writing every response on its own.
+     * @return number of flushes saved
+     */
+    long flushesSaved() {
+        return Math.max(responses() - flushes(), 0);
+    }
+
+    /**
+     * Formats a snapshot of the counters for the log.
+     * @return counters as name=value pairs
+     */
+    public String toString() {
+        long responses = responses();
+        long flushes = flushes();
+        return "responses=" + responses + " flushes=" + flushes + " flushesSaved=" + Math.max(responses - flushes, 0)
+                + " slowConsumersEvicted=" + slowConsumersEvicted() + " connectionsAccepted=" + connectionsAccepted()
+                + " connectionsRejected=" + connectionsRejected() + " connectionsQueued=" + connectionsQueued();
+    }
+}
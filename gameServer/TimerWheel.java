@@ -0,0 +1,330 @@
+package gameServer;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * TimerWheel is a hashed timing wheel running all the timeouts of the server on a single thread.
+ * <p>
+ * The wheel is a ring of buckets, each one tick long. A timeout is hashed to the bucket of its deadline
+ * and remembers how many full turns of the wheel are left before it is due, so scheduling and cancelling
+ * are O(1) whatever the number of pending timeouts, unlike the O(log n) heap of a
+ * {@code ScheduledExecutorService}. The price is precision: a timeout fires on the first tick after
+ * its deadline, so it is late by at most one tick.
+ * <p>
+ * {@link #schedule(Runnable, long, TimeUnit)} and {@link Timeout#cancel()} may be called from any thread.
+ * Scheduling only queues the timeout and cancelling only flips its state, so the buckets are touched by
+ * the wheel thread alone; a cancelled timeout is unlinked the next time the wheel passes its bucket,
+ * within one turn. The tasks run on the wheel thread and must not block; work that does should be
+ * handed over to the thread owning it.
+ */
+final class TimerWheel implements Runnable {
+    /**
+     * Most timeouts moved from the queue into the buckets per tick, so a burst of schedules can't stall the wheel.
+     */
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+    /**
+     * Length of a tick in nanoseconds.
+     */
+    private final long tickNanos;
+    /**
+     * Buckets of the wheel, one per tick of a turn.
+     */
+    private final Bucket[] wheel;
+    /**
+     * Mask mapping a tick to its bucket; the number of buckets is a power of two.
+     */
+    private final int mask;
+    /**
+     * Time the wheel started at, in {@link System#nanoTime()} units. Deadlines are relative to it.
+     */
+    private final long startTime;
+    /**
+     * Timeouts scheduled by any thread and not yet put into their bucket.
+     */
+    private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    /**
+     * Number of timeouts that have neither fired nor been cancelled.
+     */
+    private final AtomicLong pending = new AtomicLong();
+    /**
+     * Number of ticks the wheel has gone through; only used by the wheel thread.
+     */
+    private long tick;
+    /**
+     * Flag to stop the wheel.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Constructor to create a TimerWheel.
+     * @param tickDuration length of a tick, the precision of the timeouts
+     * @param unit unit of the tick duration
+     * @param ticksPerWheel number of buckets, rounded up to a power of two
+     * @throws IllegalArgumentException thrown if the tick duration or the number of buckets is not positive
+     */
+    TimerWheel(long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        if (tickDuration <= 0 || ticksPerWheel <= 0 || ticksPerWheel > 1 << 30) {
+            throw new IllegalArgumentException("tickDuration and ticksPerWheel must be positive");
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+        int buckets = Integer.highestOneBit(ticksPerWheel);
+        if (buckets < ticksPerWheel) {
+            buckets <<= 1;
+        }
+        this.wheel = new Bucket[buckets];
+        for (int i = 0; i < buckets; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = buckets - 1;
+        this.startTime = System.nanoTime();
+    }
+
+    /**
+     * Schedules a task to be run once on the wheel thread after the delay.
+     * @param task task to be run, which must not block
+     * @param delay time from now after which the task is run
+     * @param unit unit of the delay
+     * @return handle to cancel the timeout
+     */
+    Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        long deadline = System.nanoTime() - startTime + Math.max(unit.toNanos(delay), 0);
+        Timeout timeout = new Timeout(task, deadline);
+        pending.incrementAndGet();
+        scheduled.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Returns the number of timeouts that have neither fired nor been cancelled.
+     * @return number of pending timeouts
+     */
+    long pendingTimeouts() {
+        return pending.get();
+    }
+
+    /**
+     * Runs the wheel until it is closed: on every tick the queued changes are applied to the buckets
+     * and the timeouts due in the current bucket are fired.
+     */
+    public void run() {
+        while (running) {
+            long deadline = waitForNextTick();
+            if (!running) {
+                break;
+            }
+            transferScheduled();
+            wheel[(int) (tick & mask)].expire(deadline);
+            tick++;
+        }
+    }
+
+    /**
+     * Stops the wheel; the pending timeouts never fire.
+     */
+    void close() {
+        running = false;
+    }
+
+    /**
+     * Sleeps until the end of the current tick.
+     * @return time of the end of the tick relative to the start of the wheel
+     */
+    private long waitForNextTick() {
+        long deadline = tickNanos * (tick + 1);
+        while (running) {
+            long sleep = deadline - (System.nanoTime() - startTime);
+            if (sleep <= 0) {
+                break;
+            }
+            LockSupport.parkNanos(this, sleep);
+        }
+        return deadline;
+    }
+
+    /**
+     * Puts the queued timeouts into the buckets of their deadline.
+     */
+    private void transferScheduled() {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            Timeout timeout = scheduled.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.state == Timeout.CANCELLED) {
+                continue;
+            }
+            long due = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (due - tick) / wheel.length;
+            // a timeout already overdue goes into the current bucket instead of a past one
+            wheel[(int) (Math.max(due, tick) & mask)].add(timeout);
+        }
+    }
+
+    /**
+     * Timeout is the handle of a task scheduled with the wheel.
+     */
+    final class Timeout {
+        /**
+         * State of a timeout that is waiting for its deadline.
+         */
+        private static final int WAITING = 0;
+        /**
+         * State of a cancelled timeout.
+         */
+        private static final int CANCELLED = 1;
+        /**
+         * State of a timeout whose task has been run.
+         */
+        private static final int EXPIRED = 2;
+        /**
+         * Atomic access to the state of the timeouts.
+         */
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        /**
+         * Task to be run at the deadline.
+         */
+        private final Runnable task;
+        /**
+         * Deadline relative to the start of the wheel in nanoseconds.
+         */
+        private final long deadline;
+        /**
+         * Whether the timeout is waiting, cancelled or expired.
+         */
+        private volatile int state = WAITING;
+        /**
+         * Number of turns of the wheel left before the deadline; only used by the wheel thread.
+         */
+        private long remainingRounds;
+        /**
+         * Previous timeout in the bucket.
+         */
+        private Timeout previous;
+        /**
+         * Next timeout in the bucket.
+         */
+        private Timeout next;
+
+        /**
+         * Constructor to create a Timeout.
+         * @param task task to be run at the deadline
+         * @param deadline deadline relative to the start of the wheel in nanoseconds
+         */
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancels the timeout, unless it has already fired.
+         * @return true if the timeout was cancelled else false
+         */
+        boolean cancel() {
+            if (!STATE.compareAndSet(this, WAITING, CANCELLED)) {
+                return false;
+            }
+            pending.decrementAndGet();
+            return true;
+        }
+
+        /**
+         * Runs the task if the timeout has not been cancelled.
+         */
+        private void expire() {
+            if (!STATE.compareAndSet(this, WAITING, EXPIRED)) {
+                return;
+            }
+            pending.decrementAndGet();
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                // a failing task must not stop the other timeouts
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Bucket is the doubly linked list of the timeouts hashed to one tick of the wheel.
+     * It is only used by the wheel thread.
+     */
+    private static final class Bucket {
+        /**
+         * First timeout in the bucket.
+         */
+        private Timeout head;
+        /**
+         * Last timeout in the bucket.
+         */
+        private Timeout tail;
+
+        /**
+         * Appends a timeout to the bucket.
+         * @param timeout timeout to be added
+         */
+        void add(Timeout timeout) {
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.previous = tail;
+                tail = timeout;
+            }
+        }
+
+        /**
+         * Unlinks a timeout from the bucket.
+         * @param timeout timeout to be removed
+         * @return timeout that followed the removed one
+         */
+        Timeout remove(Timeout timeout) {
+            Timeout next = timeout.next;
+            if (timeout.previous != null) {
+                timeout.previous.next = next;
+            }
+            if (next != null) {
+                next.previous = timeout.previous;
+            }
+            if (timeout == head) {
+                head = next;
+            }
+            if (timeout == tail) {
+                tail = timeout.previous;
+            }
+            timeout.previous = null;
+            timeout.next = null;
+            return next;
+        }
+
+        /**
+         * Fires the timeouts of the bucket that are due in the current turn of the wheel, unlinks the
+         * cancelled ones and counts down the turns of the others.
+         * @param deadline time of the end of the current tick relative to the start of the wheel
+         */
+        void expire(long deadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                if (timeout.remainingRounds <= 0) {
+                    Timeout next = remove(timeout);
+                    if (timeout.deadline <= deadline) {
+                        timeout.expire();
+                    }
+                    timeout = next;
+                } else if (timeout.state == Timeout.CANCELLED) {
+                    timeout = remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                    timeout = timeout.next;
+                }
+            }
+        }
+    }
+}
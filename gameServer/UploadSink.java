@@ -0,0 +1,40 @@
+package gameServer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The interface represents the receiver of a FILE_UPLOAD payload that is streamed in as it arrives.
+ * <p>
+ * The payload is handed over in chunks, in order, and never as a whole.
+ */
+interface UploadSink {
+
+    /**
+     * Consumes the next chunk of the payload.
+     * The chunk is only valid for the duration of the call.
+     * @param chunk bytes of the payload between its position and limit
+     * @throws IOException thrown if the chunk can't be consumed
+     */
+    void write(ByteBuffer chunk) throws IOException;
+
+    /**
+     * Completes the upload after the last chunk.
+     * @throws IOException thrown if there is an error in sending the responses to the players
+     */
+    void finish() throws IOException;
+
+    /**
+     * Fails the upload after the last chunk instead of completing it, e.g. for a compressed payload
+     * that can't be decompressed.
+     * @param reason why the upload failed, to be appended to the file name in the response
+     * @throws IOException thrown if there is an error in sending the response to the player
+     */
+    void fail(String reason) throws IOException;
+
+    /**
+     * Drops the upload before its last chunk, without responding to anyone, when the connection of the player
+     * uploading it is closed. Whatever the upload holds, such as a file or pending tasks, is released.
+     */
+    void abort();
+}
@@ -0,0 +1,145 @@
+package gameServer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * UploadSpool stores the payload of an upload in a file of its own, to be indexed through a memory mapping.
+ * <p>
+ * The payload is written to the file as it arrives, so it is held by the page cache rather than the heap, and once it
+ * is complete the file is mapped read-only and indexed from the mapping, in windows of at most 1 GiB: on the thread
+ * receiving the upload, or split up on the fork-join pool for a large payload. Only the index is kept on the heap.
+ * <p>
+ * Every upload has a temporary file of its own in the spool directory, so an upload still being indexed off the
+ * thread receiving it never shares its file with the next upload of the game. The file is deleted once it is
+ * indexed or the upload is dropped, and the spool files left in the directory are deleted when the server starts,
+ * so files left behind by a server that didn't shut down cleanly are removed.
+ */
+final class UploadSpool {
+    /**
+     * Prefix of the names of the spool files.
+     */
+    private static final String PREFIX = "upload-";
+    /**
+     * Suffix of the names of the spool files.
+     */
+    private static final String SUFFIX = ".upload";
+    /**
+     * Largest part of the file mapped at a time.
+     */
+    private static final long MAX_WINDOW_BYTES = 1L << 30;
+
+    /**
+     * Path of the spool file.
+     */
+    private final Path path;
+    /**
+     * Channel the payload is written to and mapped from.
+     */
+    private final FileChannel channel;
+    /**
+     * Number of bytes written.
+     */
+    private long size;
+
+    /**
+     * Constructor to create an UploadSpool, creating a new spool file for the upload.
+     * @param directory spool directory
+     * @throws IOException thrown if the file can't be created or opened
+     */
+    UploadSpool(Path directory) throws IOException {
+        this.path = Files.createTempFile(directory, PREFIX, SUFFIX);
+        this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Appends the next chunk of the payload to the file.
+     * @param chunk bytes of the payload between its position and limit, all consumed
+     * @throws IOException thrown if the bytes can't be written
+     */
+    void write(ByteBuffer chunk) throws IOException {
+        while (chunk.hasRemaining()) {
+            size += channel.write(chunk);
+        }
+    }
+
+    /**
+     * Maps the complete payload and indexes it, then closes and deletes the file.
+     * @param pool pool to index the payload on, or null to index it on the calling thread
+     * @param scanner backend of the tokenizer, or null to scan a byte at a time
+     * @return index of the payload
+     * @throws IOException thrown if the file can't be mapped
+     */
+    WordIndex index(ForkJoinPool pool, WordScanner scanner) throws IOException {
+        try (channel) {
+            WordIndex index = new WordIndex();
+            WordTokenizer tokenizer = pool == null ? new WordTokenizer(index, scanner) : null;
+            long position = 0;
+            while (position < size) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(MAX_WINDOW_BYTES, size - position));
+                if (tokenizer != null) {
+                    // the tokenizer carries a word cut by the end of a window over to the next one
+                    tokenizer.write(window);
+                    position += window.capacity();
+                    continue;
+                }
+                int end = window.capacity();
+                if (position + end < size) {
+                    while (end > 0 && !WordTokenizer.isSeparator(window.get(end - 1))) {
+                        end--;
+                    }
+                    if (end == 0) {
+                        // a word longer than a window is counted as two words
+                        end = window.capacity();
+                    }
+                }
+                index.addAll(ParallelIndexer.index(pool, window.slice(0, end), scanner));
+                position += end;
+            }
+            if (tokenizer != null) {
+                tokenizer.finish();
+            }
+            return index;
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Drops the payload, closing and deleting the file.
+     */
+    void discard() {
+        try (channel) {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.out.println("Exception caught " + e.getMessage());
+        }
+    }
+
+    /**
+     * Creates the spool directory if needed and deletes the spool files left in it, leaving any other file alone.
+     * @param directory spool directory
+     * @return number of files deleted
+     * @throws IOException thrown if the directory can't be created or listed
+     */
+    static int clean(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        int deleted = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                if (Files.deleteIfExists(file)) {
+                    deleted++;
+                }
+            }
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,76 @@
+package gameServer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * WordIndex counts the occurrences of every word of an uploaded file.
+ * <p>
+ * A word is a maximal run of letters, digits and underscores, lower cased, so a word is counted exactly where the
+ * regular expression {@code \b<word>\b} would find it in the lower cased text: "the" is not counted inside "there"
+ * or "then" and "th" is not a word of "the the". The index is built once while the upload is streamed in; checking
+ * and counting a picked word are then a single hash lookup instead of a scan of the text. The words are kept as
+ * UTF-8 bytes in a {@link WordTable}, fed by a {@link WordTokenizer}.
+ * <p>
+ * The index is written by the thread receiving the upload, or by the task indexing one part of a large upload,
+ * and only read once the upload is complete.
+ */
+final class WordIndex implements WordTokenizer.Sink {
+    /**
+     * Number of occurrences of every word.
+     */
+    private final WordTable table = new WordTable();
+
+    /**
+     * Counts one occurrence of a word.
+     * @param bytes bytes holding the lower cased UTF-8 word
+     * @param offset offset of the word
+     * @param length length of the word in bytes
+     * @param hash hash of the word, as computed by {@link WordTable#hash(byte[], int, int)}
+     */
+    public void word(byte[] bytes, int offset, int length, int hash) {
+        table.add(bytes, offset, length, hash, 1);
+    }
+
+    /**
+     * Adds the counts of another index, e.g. of another part of the same file.
+     * @param other index whose counts are added
+     */
+    void addAll(WordIndex other) {
+        table.addAll(other.table);
+    }
+
+    /**
+     * Returns the number of occurrences of a word.
+     * @param word word to be looked up, in any case
+     * @return number of occurrences, 0 if the word doesn't occur or isn't a single word
+     */
+    int count(String word) {
+        byte[] bytes = word.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8);
+        return table.count(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Returns the number of distinct words.
+     * @return number of distinct words
+     */
+    int distinctWords() {
+        return table.size();
+    }
+
+    /**
+     * Returns the total number of words.
+     * @return number of words, counting every occurrence
+     */
+    long words() {
+        return table.total();
+    }
+
+    /**
+     * Checks if the index has no words.
+     * @return true if no word has been added else false
+     */
+    boolean isEmpty() {
+        return table.total() == 0;
+    }
+}
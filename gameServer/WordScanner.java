@@ -0,0 +1,58 @@
+package gameServer;
+
+/**
+ * The interface represents a backend of the {@link WordTokenizer} finding the runs of word bytes in a block of text.
+ * <p>
+ * A run is a maximal run of bytes that are not ASCII separators, i.e. of ASCII letters, digits and underscores and
+ * of non-ASCII bytes. The tokenizer itself scans a byte at a time; a scanner classifies many bytes at once. The
+ * only one is the {@code VectorWordScanner} of the {@code simd} source root, built on the incubating Vector API,
+ * which is only used when that class and the {@code jdk.incubator.vector} module are present.
+ */
+interface WordScanner {
+    /**
+     * Name of the class of the Vector API scanner.
+     */
+    String VECTOR_SCANNER = "gameServer.VectorWordScanner";
+    /**
+     * Name of the module of the Vector API.
+     */
+    String VECTOR_MODULE = "jdk.incubator.vector";
+
+    /**
+     * Lower cases the ASCII letters of a block of bytes in place and finds where its runs of word bytes start and end.
+     * @param bytes bytes holding the block
+     * @param from start of the block
+     * @param to end of the block
+     * @param inWord true if the block continues a run of word bytes
+     * @param boundaries receives the offsets where a run starts and where it ends, the offset after its last byte,
+     *                   alternately and in order, starting with the end of the run continued if {@code inWord};
+     *                   a run still going at the end of the block has no end. It must hold
+     *                   {@code to - from + 1} offsets.
+     * @return number of offsets written to the boundaries
+     */
+    int scan(byte[] bytes, int from, int to, boolean inWord, int[] boundaries);
+
+    /**
+     * Describes the scanner for the log.
+     * @return description of the scanner
+     */
+    String describe();
+
+    /**
+     * Loads the Vector API scanner if this JVM can run it.
+     * @return Vector API scanner, or null if the {@code jdk.incubator.vector} module isn't in the boot layer,
+     *         e.g. the JVM wasn't started with {@code --add-modules jdk.incubator.vector}, or the scanner
+     *         wasn't compiled
+     */
+    static WordScanner loadVector() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return null;
+        }
+        try {
+            return (WordScanner) Class.forName(VECTOR_SCANNER).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            System.out.println("Exception caught " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package gameServer;
+
+import java.util.Arrays;
+
+/**
+ * WordTable is an open addressing hash table counting words given as slices of UTF-8 bytes.
+ * <p>
+ * Unlike a {@code HashMap<String, Integer>}, it allocates no object per word: the bytes of all the words are
+ * appended to one arena, and the words are numbered in the order they were first added, with their hash, the
+ * offset of their bytes in the arena and their count in parallel {@code int} arrays. The hash slots only hold the
+ * word numbers and are probed linearly, comparing the stored hash before the bytes. A lookup works from any byte
+ * slice, e.g. a token of a received buffer, without creating a String.
+ * <p>
+ * The table is not thread safe; it is filled by one thread and may be read by others once it is published.
+ */
+final class WordTable {
+    /**
+     * Initial number of hash slots, a power of two.
+     */
+    private static final int INITIAL_SLOTS = 1024;
+    /**
+     * Initial size of the byte arena.
+     */
+    private static final int INITIAL_ARENA_BYTES = 8 * 1024;
+
+    /**
+     * Word number plus one of every hash slot, 0 for an empty slot.
+     */
+    private int[] slots = new int[INITIAL_SLOTS];
+    /**
+     * Hash of every word, by word number.
+     */
+    private int[] hashes = new int[INITIAL_SLOTS / 2];
+    /**
+     * Offset of the bytes of every word in the arena, by word number, followed by the end of the arena.
+     */
+    private int[] offsets = new int[INITIAL_SLOTS / 2 + 1];
+    /**
+     * Number of occurrences of every word, by word number.
+     */
+    private int[] counts = new int[INITIAL_SLOTS / 2];
+    /**
+     * Bytes of all the words, one after the other.
+     */
+    private byte[] arena = new byte[INITIAL_ARENA_BYTES];
+    /**
+     * Number of distinct words.
+     */
+    private int size;
+    /**
+     * Total number of occurrences added.
+     */
+    private long total;
+
+    /**
+     * Computes the hash of a word, the one expected by the methods taking a precomputed hash.
+     * It is the polynomial hash of {@link String#hashCode()} over the unsigned bytes, so it can be
+     * computed one byte at a time while the word is being scanned: {@code hash = 31 * hash + (b & 0xFF)}.
+     * @param bytes bytes holding the word
+     * @param offset offset of the word
+     * @param length length of the word in bytes
+     * @return hash of the word
+     */
+    static int hash(byte[] bytes, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + (bytes[i] & 0xFF);
+        }
+        return hash;
+    }
+
+    /**
+     * Counts one occurrence of a word.
+     * @param bytes bytes holding the word
+     * @param offset offset of the word
+     * @param length length of the word in bytes, more than 0
+     */
+    void add(byte[] bytes, int offset, int length) {
+        add(bytes, offset, length, hash(bytes, offset, length), 1);
+    }
+
+    /**
+     * Counts occurrences of a word whose hash is already known.
+     * @param bytes bytes holding the word
+     * @param offset offset of the word
+     * @param length length of the word in bytes, more than 0
+     * @param hash hash of the word, as computed by {@link #hash(byte[], int, int)}
+     * @param occurrences number of occurrences to be added
+     */
+    void add(byte[] bytes, int offset, int length, int hash, int occurrences) {
+        int mask = slots.length - 1;
+        int slot = spread(hash) & mask;
+        while (true) {
+            int word = slots[slot] - 1;
+            if (word < 0) {
+                break;
+            }
+            if (hashes[word] == hash && matches(word, bytes, offset, length)) {
+                counts[word] += occurrences;
+                total += occurrences;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int word = append(bytes, offset, length, hash, occurrences);
+        slots[slot] = word + 1;
+        total += occurrences;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+    }
+
+    /**
+     * Adds the counts of all the words of another table.
+     * @param other table whose words are added
+     */
+    void addAll(WordTable other) {
+        for (int word = 0; word < other.size; word++) {
+            int start = other.offsets[word];
+            add(other.arena, start, other.offsets[word + 1] - start, other.hashes[word], other.counts[word]);
+        }
+    }
+
+    /**
+     * Returns the number of occurrences of a word.
+     * @param bytes bytes holding the word
+     * @param offset offset of the word
+     * @param length length of the word in bytes
+     * @return number of occurrences, 0 if the word was never added
+     */
+    int count(byte[] bytes, int offset, int length) {
+        return count(bytes, offset, length, hash(bytes, offset, length));
+    }
+
+    /**
+     * Returns the number of occurrences of a word whose hash is already known.
+     * @param bytes bytes holding the word
+     * @param offset offset of the word
+     * @param length length of the word in bytes
+     * @param hash hash of the word, as computed by {@link #hash(byte[], int, int)}
+     * @return number of occurrences, 0 if the word was never added
+     */
+    int count(byte[] bytes, int offset, int length, int hash) {
+        int mask = slots.length - 1;
+        int slot = spread(hash) & mask;
+        while (true) {
+            int word = slots[slot] - 1;
+            if (word < 0) {
+                return 0;
+            }
+            if (hashes[word] == hash && matches(word, bytes, offset, length)) {
+                return counts[word];
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Returns the number of distinct words.
+     * @return number of distinct words
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the total number of occurrences added.
+     * @return number of occurrences of all the words
+     */
+    long total() {
+        return total;
+    }
+
+    /**
+     * Returns the number of bytes held by the arrays of the table, excluding the array headers.
+     * @return memory held by the table in bytes
+     */
+    long memoryBytes() {
+        return 4L * (slots.length + hashes.length + offsets.length + counts.length) + arena.length;
+    }
+
+    /**
+     * Shrinks the arrays of the table to its words, once no more words will be added.
+     */
+    void trim() {
+        hashes = Arrays.copyOf(hashes, size);
+        offsets = Arrays.copyOf(offsets, size + 1);
+        counts = Arrays.copyOf(counts, size);
+        arena = Arrays.copyOf(arena, offsets[size]);
+    }
+
+    /**
+     * Appends a new word with its bytes to the arrays of the words.
+     * @param bytes bytes holding the word
+     * @param offset offset of the word
+     * @param length length of the word in bytes
+     * @param hash hash of the word
+     * @param occurrences number of occurrences of the word
+     * @return number of the new word
+     */
+    private int append(byte[] bytes, int offset, int length, int hash, int occurrences) {
+        if (size == counts.length) {
+            int capacity = Math.max(counts.length * 2, 16);
+            hashes = Arrays.copyOf(hashes, capacity);
+            offsets = Arrays.copyOf(offsets, capacity + 1);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        int start = offsets[size];
+        if (start + length > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, start + length));
+        }
+        System.arraycopy(bytes, offset, arena, start, length);
+        hashes[size] = hash;
+        counts[size] = occurrences;
+        offsets[size + 1] = start + length;
+        return size++;
+    }
+
+    /**
+     * Checks if the bytes of a word are equal to a byte slice.
+     * @param word number of the word
+     * @param bytes bytes holding the slice
+     * @param offset offset of the slice
+     * @param length length of the slice
+     * @return true if they are equal else false
+     */
+    private boolean matches(int word, byte[] bytes, int offset, int length) {
+        int start = offsets[word];
+        return offsets[word + 1] - start == length
+                && Arrays.equals(arena, start, start + length, bytes, offset, offset + length);
+    }
+
+    /**
+     * Doubles the hash slots and reinserts the words from their stored hashes.
+     */
+    private void rehash() {
+        int[] grown = new int[slots.length * 2];
+        int mask = grown.length - 1;
+        for (int word = 0; word < size; word++) {
+            int slot = spread(hashes[word]) & mask;
+            while (grown[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            grown[slot] = word + 1;
+        }
+        slots = grown;
+    }
+
+    /**
+     * Mixes the bits of a hash so the low bits used to pick a slot depend on all of them.
+     * @param hash hash of a word
+     * @return mixed hash
+     */
+    private static int spread(int hash) {
+        int mixed = hash * 0x9E3779B9;
+        return mixed ^ (mixed >>> 16);
+    }
+}
@@ -0,0 +1,297 @@
+package gameServer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * WordTokenizer splits UTF-8 text into lower cased words straight from its bytes, as it is streamed in.
+ * <p>
+ * A word is a maximal run of letters, digits and underscores, so a word is found exactly where the regular
+ * expression {@code \b<word>\b} would find it in the lower cased text. The bytes are copied in blocks into a
+ * scratch array, where every ASCII byte is looked up in a class table telling word bytes from separators and word
+ * bytes are lower cased in place through a second table while the hash of the word is computed, so an ASCII word
+ * is handed to the {@link Sink} as an offset, length and hash in the scratch array without any String or copy.
+ * A word cut by the end of a block is moved to the start of the scratch array and continued with the next block.
+ * <p>
+ * The bytes of a multi-byte UTF-8 character never include an ASCII byte, so the ASCII separators split the text
+ * the same way whatever its encoding. A run of word bytes holding non-ASCII bytes takes a slower path instead: it is
+ * decoded and split with the Unicode definition of letters and digits, and every word is lower cased and encoded
+ * again. The blocks may rather be handed to a {@link WordScanner} finding the runs of word bytes many bytes at a
+ * time, the hash of each run being computed once it is found. {@code TokenizerBenchmark} measures the tokenizer
+ * alone and with the words counted in a {@link WordIndex} against the String based splitting.
+ * <p>
+ * The tokenizer is not thread safe; it is fed by the thread receiving the upload.
+ */
+final class WordTokenizer {
+    /**
+     * The interface represents the receiver of the words found by the tokenizer.
+     */
+    interface Sink {
+        /**
+         * Consumes a word. The bytes are only valid for the duration of the call.
+         * @param bytes bytes holding the lower cased UTF-8 word
+         * @param offset offset of the word
+         * @param length length of the word in bytes
+         * @param hash hash of the word, as computed by {@link WordTable#hash(byte[], int, int)}
+         */
+        void word(byte[] bytes, int offset, int length, int hash);
+    }
+
+    /**
+     * Class of the ASCII bytes that are not part of a word.
+     */
+    private static final byte SEPARATOR = 0;
+    /**
+     * Class of the ASCII letters, digits and underscore.
+     */
+    private static final byte WORD = 1;
+    /**
+     * Class of the bytes of multi-byte UTF-8 characters.
+     */
+    private static final byte NON_ASCII = 2;
+    /**
+     * Class of every byte value.
+     */
+    private static final byte[] CLASSES = new byte[256];
+    /**
+     * Lower cased value of every byte value, the byte itself except for the ASCII upper case letters.
+     */
+    private static final byte[] LOWER = new byte[256];
+    /**
+     * Number of bytes copied into the scratch array at a time.
+     */
+    private static final int BLOCK_SIZE = 16 * 1024;
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            LOWER[b] = (byte) (b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b);
+            if (b >= 0x80) {
+                CLASSES[b] = NON_ASCII;
+            } else if (isWordChar((char) b)) {
+                CLASSES[b] = WORD;
+            } else {
+                CLASSES[b] = SEPARATOR;
+            }
+        }
+    }
+
+    /**
+     * Receiver of the words.
+     */
+    private final Sink sink;
+    /**
+     * Backend finding the runs of word bytes, or null to scan a byte at a time.
+     */
+    private final WordScanner scanner;
+    /**
+     * Boundaries of the runs of word bytes found by the scanner in a block, or null without a scanner.
+     */
+    private final int[] boundaries;
+    /**
+     * Scratch array the text is copied into and lower cased in place, starting with the word cut by the last block.
+     */
+    private byte[] buffer = new byte[BLOCK_SIZE];
+    /**
+     * Number of bytes at the start of the buffer held over from the last block, the start of a word.
+     */
+    private int carried;
+    /**
+     * Hash of the bytes held over from the last block.
+     */
+    private int carriedHash;
+    /**
+     * Flag to identify if the bytes held over from the last block include non-ASCII bytes.
+     */
+    private boolean carriedNonAscii;
+
+    /**
+     * Constructor to create a WordTokenizer.
+     * @param sink receiver of the words
+     */
+    WordTokenizer(Sink sink) {
+        this(sink, null);
+    }
+
+    /**
+     * Constructor to create a WordTokenizer with a backend.
+     * @param sink receiver of the words
+     * @param scanner backend finding the runs of word bytes, or null to scan a byte at a time
+     */
+    WordTokenizer(Sink sink, WordScanner scanner) {
+        this.sink = sink;
+        this.scanner = scanner;
+        this.boundaries = scanner == null ? null : new int[BLOCK_SIZE + 1];
+    }
+
+    /**
+     * Splits the next chunk of the text into words. A word may continue in the next chunk.
+     * @param chunk bytes of the text between its position and limit, all consumed
+     */
+    void write(ByteBuffer chunk) {
+        while (chunk.hasRemaining()) {
+            if (carried == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int length = Math.min(chunk.remaining(), Math.min(BLOCK_SIZE, buffer.length - carried));
+            chunk.get(buffer, carried, length);
+            if (scanner != null) {
+                scanRuns(carried + length);
+            } else {
+                scan(carried + length);
+            }
+        }
+    }
+
+    /**
+     * Splits the next bytes of the text into words. A word may continue in the next bytes.
+     * @param bytes bytes holding the text
+     * @param offset offset of the text
+     * @param length length of the text in bytes
+     */
+    void write(byte[] bytes, int offset, int length) {
+        write(ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    /**
+     * Ends the text, handing over the word it ends with.
+     */
+    void finish() {
+        if (carried > 0) {
+            emitRun(0, carried);
+            carried = 0;
+        }
+    }
+
+    /**
+     * Splits the bytes of the buffer into words, carrying a word cut by the end of the bytes over to the next block.
+     * @param end end of the bytes in the buffer
+     */
+    private void scan(int end) {
+        byte[] buffer = this.buffer;
+        int i = carried;
+        int start = carried > 0 ? 0 : -1;
+        int hash = carriedHash;
+        boolean nonAscii = carriedNonAscii;
+        while (i < end) {
+            if (start < 0) {
+                while (i < end && CLASSES[buffer[i] & 0xFF] == SEPARATOR) {
+                    i++;
+                }
+                start = i;
+                hash = 0;
+                nonAscii = false;
+            }
+            while (i < end) {
+                int b = buffer[i] & 0xFF;
+                byte kind = CLASSES[b];
+                if (kind == SEPARATOR) {
+                    break;
+                }
+                // non-ASCII bytes are not lower cased and spoil the hash, the slow path makes up for both
+                nonAscii |= kind == NON_ASCII;
+                byte lower = LOWER[b];
+                buffer[i++] = lower;
+                hash = 31 * hash + lower;
+            }
+            if (i < end) {
+                emit(start, i - start, hash, nonAscii);
+                start = -1;
+            }
+        }
+        carried = start < 0 ? 0 : end - start;
+        System.arraycopy(buffer, end - carried, buffer, 0, carried);
+        carriedHash = hash;
+        carriedNonAscii = nonAscii;
+    }
+
+    /**
+     * Splits the bytes of the buffer into words with the scanner, carrying a word cut by the end of the bytes over to
+     * the next block.
+     * @param end end of the bytes in the buffer
+     */
+    private void scanRuns(int end) {
+        int count = scanner.scan(buffer, carried, end, carried > 0, boundaries);
+        int start = carried > 0 ? 0 : -1;
+        for (int i = 0; i < count; i++) {
+            if (start < 0) {
+                start = boundaries[i];
+            } else {
+                emitRun(start, boundaries[i]);
+                start = -1;
+            }
+        }
+        carried = start < 0 ? 0 : end - start;
+        System.arraycopy(buffer, end - carried, buffer, 0, carried);
+    }
+
+    /**
+     * Hashes a run of lower cased word bytes and hands it to the sink.
+     * @param start offset of the run in the buffer
+     * @param end end of the run
+     */
+    private void emitRun(int start, int end) {
+        int hash = 0;
+        boolean nonAscii = false;
+        for (int i = start; i < end; i++) {
+            byte b = buffer[i];
+            nonAscii |= b < 0;
+            hash = 31 * hash + b;
+        }
+        emit(start, end - start, hash, nonAscii);
+    }
+
+    /**
+     * Hands a run of word bytes to the sink, through the slow path if it includes non-ASCII bytes.
+     * @param offset offset of the run in the buffer
+     * @param length length of the run in bytes
+     * @param hash hash of the run, only valid for an ASCII run
+     * @param nonAscii true if the run includes non-ASCII bytes
+     */
+    private void emit(int offset, int length, int hash, boolean nonAscii) {
+        if (nonAscii) {
+            splitText(new String(buffer, offset, length, StandardCharsets.UTF_8));
+        } else {
+            sink.word(buffer, offset, length, hash);
+        }
+    }
+
+    /**
+     * Splits decoded text into words with the Unicode definition of a word character and hands them to the sink.
+     * @param text text to be split
+     */
+    private void splitText(String text) {
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            if (i < text.length() && isWordChar(text.charAt(i))) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                byte[] word = text.substring(start, i).toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8);
+                sink.word(word, 0, word.length, WordTable.hash(word, 0, word.length));
+                start = -1;
+            }
+        }
+    }
+
+    /**
+     * Checks if a byte is an ASCII byte that is not part of a word. Text split at such a byte is split between
+     * two words, never inside a word or a multi-byte character.
+     * @param b byte to be checked
+     * @return true for an ASCII separator else false
+     */
+    static boolean isSeparator(byte b) {
+        return CLASSES[b & 0xFF] == SEPARATOR;
+    }
+
+    /**
+     * Checks if a character belongs to a word.
+     * @param c character to be checked
+     * @return true for a letter, digit or underscore else false
+     */
+    static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+}
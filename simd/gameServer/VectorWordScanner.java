@@ -0,0 +1,92 @@
+package gameServer;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * VectorWordScanner finds the runs of word bytes of a block with the incubating Vector API, 32 or 64 bytes at a time.
+ * <p>
+ * Every vector of bytes is classified with a few lane-wise comparisons: a byte folded to lower case with
+ * {@code | 0x20} is a letter if it is within {@code 'a'..'z'}, and digits, the underscore and the non-ASCII bytes
+ * are compared for directly. The letters are stored back lower cased, and the mask of word bytes is turned into a
+ * {@code long} with a bit per byte. The starts of runs are the word bits whose previous bit is clear and the ends
+ * are the clear bits whose previous bit is set, with the last bit of the previous vector shifted in, so the
+ * boundaries are read off the bits with {@link Long#numberOfTrailingZeros(long)} instead of testing every byte.
+ * The bytes after the last full vector are classified one at a time.
+ * <p>
+ * This class lives in its own source root because it only compiles and runs with
+ * {@code --add-modules jdk.incubator.vector}; see {@link WordScanner#loadVector()}.
+ */
+final class VectorWordScanner implements WordScanner {
+    /**
+     * Shape of the vectors, the preferred one of the CPU up to the 64 bytes a {@code long} mask can hold.
+     */
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED.length() <= Long.SIZE
+            ? ByteVector.SPECIES_PREFERRED : ByteVector.SPECIES_512;
+    /**
+     * Number of bytes classified at a time.
+     */
+    private static final int LANES = SPECIES.length();
+    /**
+     * Mask of the bits of a vector's bytes.
+     */
+    private static final long LANE_BITS = LANES == Long.SIZE ? -1L : (1L << LANES) - 1;
+
+    /**
+     * Lower cases the ASCII letters of a block of bytes in place and finds where its runs of word bytes start and end.
+     * @param bytes bytes holding the block
+     * @param from start of the block
+     * @param to end of the block
+     * @param inWord true if the block continues a run of word bytes
+     * @param boundaries receives the offsets where runs start and end, alternately and in order
+     * @return number of offsets written to the boundaries
+     */
+    public int scan(byte[] bytes, int from, int to, boolean inWord, int[] boundaries) {
+        int count = 0;
+        long previous = inWord ? 1 : 0;
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += LANES) {
+            ByteVector vector = ByteVector.fromArray(SPECIES, bytes, i);
+            ByteVector folded = vector.or((byte) 0x20);
+            VectorMask<Byte> letters = folded.sub((byte) 'a').compare(VectorOperators.UNSIGNED_LT, 26);
+            VectorMask<Byte> words = letters
+                    .or(vector.sub((byte) '0').compare(VectorOperators.UNSIGNED_LT, 10))
+                    .or(vector.compare(VectorOperators.EQ, (byte) '_'))
+                    .or(vector.compare(VectorOperators.LT, (byte) 0));
+            if (letters.anyTrue()) {
+                vector.blend(folded, letters).intoArray(bytes, i);
+            }
+            long bits = words.toLong();
+            long shifted = (bits << 1) | previous;
+            // a run starts at a word bit after a clear bit and ends at a clear bit after a word bit
+            long changes = (bits ^ shifted) & LANE_BITS;
+            while (changes != 0) {
+                boundaries[count++] = i + Long.numberOfTrailingZeros(changes);
+                changes &= changes - 1;
+            }
+            previous = (bits >>> (LANES - 1)) & 1;
+        }
+        for (; i < to; i++) {
+            byte b = bytes[i];
+            long bit = WordTokenizer.isSeparator(b) ? 0 : 1;
+            if (bit != previous) {
+                boundaries[count++] = i;
+            }
+            if (b >= 'A' && b <= 'Z') {
+                bytes[i] = (byte) (b | 0x20);
+            }
+            previous = bit;
+        }
+        return count;
+    }
+
+    /**
+     * Describes the scanner for the log.
+     * @return description of the scanner with its vector width
+     */
+    public String describe() {
+        return "vector (" + LANES + " bytes per vector)";
+    }
+}
@@ -18,6 +18,10 @@ import static test.Lab0CheckpointTests.gPortStr;
     <li>{@link test.gameServer.TestFinal_Restart}</li>
     <li>{@link test.gameServer.TestFinal_Close}</li>
     <li>{@link test.gameServer.TestFinal_Goodbye}</li>
+    <li>{@link test.gameServer.TestFinal_Pipelining}</li>
+    <li>{@link test.gameServer.TestFinal_BinaryProtocol}</li>
+    <li>{@link test.gameServer.TestFinal_CompressedUpload}</li>
+    <li>{@link test.gameServer.TestFinal_WholeWordCount}</li>
     </ul>
  */
 public class Lab0FinalTests {
@@ -51,7 +55,11 @@ public class Lab0FinalTests {
             test.gameServer.TestFinal_GuessCount.class,
             test.gameServer.TestFinal_Restart.class,
             test.gameServer.TestFinal_Close.class,
-            test.gameServer.TestFinal_Goodbye.class
+            test.gameServer.TestFinal_Goodbye.class,
+            test.gameServer.TestFinal_Pipelining.class,
+            test.gameServer.TestFinal_BinaryProtocol.class,
+            test.gameServer.TestFinal_CompressedUpload.class,
+            test.gameServer.TestFinal_WholeWordCount.class
         };
         
         Map<String, Integer> points = new HashMap<>();
@@ -62,6 +70,11 @@ public class Lab0FinalTests {
         points.put("test.gameServer.TestFinal_Restart", 8);
         points.put("test.gameServer.TestFinal_Close", 6);
         points.put("test.gameServer.TestFinal_Goodbye", 6);
+        // pipelining, binary protocol and compressed upload checks, not graded
+        points.put("test.gameServer.TestFinal_Pipelining", 0);
+        points.put("test.gameServer.TestFinal_BinaryProtocol", 0);
+        points.put("test.gameServer.TestFinal_CompressedUpload", 0);
+        points.put("test.gameServer.TestFinal_WholeWordCount", 0);
         
         Series series = new Series(tests, runsOfEachTest);
         SeriesReport report = series.run(10, System.out);
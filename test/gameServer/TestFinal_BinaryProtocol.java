@@ -0,0 +1,126 @@
+package test.gameServer;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import test.util.*;
+import static test.Lab0CheckpointTests.gPortStr;
+
+/** Tests the binary protocol negotiated at HELLO.
+
+    <p>
+    A player says <code>HELLO &lt;username&gt; BINARY</code> and then sends its
+    commands as length-prefixed binary frames, all in a single write: string
+    and number fields, an upload whose payload contains newlines, an unknown
+    opcode, PING and GOODBYE. Every frame must be answered with the same text
+    response as its text form, in order.
+ */
+public class TestFinal_BinaryProtocol extends Test {
+
+    /** Test notice. */
+    public static final String notice =
+        "checking the binary protocol";
+
+    /** Opcodes of the binary commands. */
+    private static final int JOIN_GAME = 4, FILE_UPLOAD = 6, WORD_COUNT = 8,
+        GOODBYE = 10, PING = 11;
+
+    /** Address of the test game server. */
+    private static String address;
+    /** Player sending binary frames. */
+    private static TestGameClient binaryPlayer;
+
+    /** Initialize the test. */
+    @Override
+    protected void initialize() throws TestFailed {
+        address = "localhost:" + gPortStr;
+        binaryPlayer = new TestGameClient(address, "binary_player");
+    }
+
+    /** Performs the test. */
+    @Override
+    protected void perform() throws TestFailed {
+        binaryPlayer.send("HELLO " + binaryPlayer.p.uname + " BINARY\n");
+        if(!binaryPlayer.ReadResponse().equals("Welcome to Word Count " + binaryPlayer.p.uname + "! Do you want to create a new game or join an existing game?"))
+            throw new TestFailed("incorrect response to HELLO negotiating the binary protocol");
+
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        frames.writeBytes(frame(JOIN_GAME, string("BAD")));
+        frames.writeBytes(frame(WORD_COUNT, string("BAD"), varint(zigzag(-3))));
+        frames.writeBytes(frame(FILE_UPLOAD, string("BAD"), string("a.txt"),
+            "one two\nthree\n".getBytes(StandardCharsets.UTF_8)));
+        frames.writeBytes(frame(99));
+        frames.writeBytes(frame(PING));
+        frames.writeBytes(frame(GOODBYE));
+        binaryPlayer.send(frames.toByteArray());
+
+        String missing = "Game BAD doesn't exist! Please enter correct tag or create a new game.";
+        if(!binaryPlayer.ReadResponse().equals(missing))
+            throw new TestFailed("incorrect response to binary JOIN_GAME");
+        if(!binaryPlayer.ReadResponse().equals(missing))
+            throw new TestFailed("incorrect response to binary WORD_COUNT");
+        if(!binaryPlayer.ReadResponse().equals(missing))
+            throw new TestFailed("incorrect response to binary FILE_UPLOAD");
+        if(!binaryPlayer.ReadResponse().equals("Error! Please send a valid command."))
+            throw new TestFailed("incorrect response to unknown opcode");
+        if(!binaryPlayer.ReadResponse().equals("PONG"))
+            throw new TestFailed("incorrect response to binary PING");
+        if(!binaryPlayer.ReadResponse().equals("Bye!"))
+            throw new TestFailed("incorrect response to binary GOODBYE");
+        binaryPlayer.stop();
+    }
+
+    /** Encodes a binary frame.
+
+        @param opcode opcode of the command
+        @param fields encoded fields of the command
+        @return varint length of the frame, opcode and fields
+     */
+    private static byte[] frame(int opcode, byte[]... fields) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(opcode);
+        for (byte[] field : fields)
+            body.writeBytes(field);
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        frame.writeBytes(varint(body.size()));
+        frame.writeBytes(body.toByteArray());
+        return frame.toByteArray();
+    }
+
+    /** Encodes a string field.
+
+        @param value string to be encoded
+        @return varint length and UTF-8 bytes of the string
+     */
+    private static byte[] string(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream field = new ByteArrayOutputStream();
+        field.writeBytes(varint(bytes.length));
+        field.writeBytes(bytes);
+        return field.toByteArray();
+    }
+
+    /** Zigzag encodes a number so small negative numbers have short varints.
+
+        @param value number to be encoded
+        @return zigzag encoded number
+     */
+    private static long zigzag(int value) {
+        return ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL;
+    }
+
+    /** Encodes an unsigned varint.
+
+        @param value number to be encoded
+        @return seven bits per byte, least significant first
+     */
+    private static byte[] varint(long value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        while (value >= 0x80) {
+            bytes.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes.write((int) value);
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,100 @@
+package test.gameServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import test.util.*;
+
+/** Tests the compressed variants of FILE_UPLOAD.
+
+    <p>
+    After a game is started, the leader uploads a payload that is not gzip
+    data with <code>FILE_UPLOAD_GZIP</code> and a truncated deflate payload with
+    <code>FILE_UPLOAD_DEFLATE</code>, which must both fail without breaking the
+    connection, and then the whole test corpus gzip compressed, which must
+    complete the upload like the plain text upload does.
+ */
+public class TestFinal_CompressedUpload extends Test {
+
+    /** Test notice. */
+    public static final String notice =
+        "checking compressed uploads using FILE_UPLOAD_GZIP and FILE_UPLOAD_DEFLATE";
+
+    /** Performs the test. */
+    @Override
+    protected void perform() throws TestFailed {
+        TestGame testGame = new TestGame(4);
+        testGame.GameSetup();
+        testGame.NewGame();
+        testGame.JoinGame();
+        testGame.StartGame();
+        TestGameClient leader = testGame.leader;
+
+        byte[] text;
+        try {
+            text = Files.readAllBytes(Path.of("test", testGame.fileName));
+        } catch (IOException e) {
+            throw new TestFailed("unable to read the test corpus", e);
+        }
+
+        upload(leader, "FILE_UPLOAD_GZIP", testGame.tag, "plain.txt", text);
+        if(!leader.ReadResponse().equals("Upload failed! File plain.txt is not valid gzip data."))
+            throw new TestFailed("incorrect response to FILE_UPLOAD_GZIP with a payload that is not compressed");
+
+        byte[] deflate = compress(text, false);
+        upload(leader, "FILE_UPLOAD_DEFLATE", testGame.tag, "cut.txt", Arrays.copyOf(deflate, deflate.length / 2));
+        if(!leader.ReadResponse().equals("Upload failed! File cut.txt is truncated."))
+            throw new TestFailed("incorrect response to FILE_UPLOAD_DEFLATE with a truncated payload");
+
+        upload(leader, "FILE_UPLOAD_GZIP", testGame.tag, testGame.fileName, compress(text, true));
+        if(!leader.ReadResponse().equals("Upload completed! Waiting for word selection."))
+            throw new TestFailed("incorrect leader response after FILE_UPLOAD_GZIP");
+        for (int i = 1; i < testGame.playersInGame.size(); i++) {
+            if(!testGame.playersInGame.get(i).ReadResponse().startsWith("Upload completed!"))
+                throw new TestFailed("incorrect player response after FILE_UPLOAD_GZIP");
+        }
+
+        testGame.cleanUp();
+    }
+
+    /** Sends an upload command with a binary payload.
+
+        @param player player sending the upload
+        @param command name of the upload command
+        @param tag tag of the game
+        @param fileName name of the uploaded file
+        @param payload payload of the upload
+     */
+    private static void upload(TestGameClient player, String command, String tag, String fileName, byte[] payload) {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        line.writeBytes((command + " " + tag + " " + fileName + " " + payload.length + " ")
+            .getBytes(StandardCharsets.UTF_8));
+        line.writeBytes(payload);
+        line.write('\n');
+        player.send(line.toByteArray());
+    }
+
+    /** Compresses bytes in memory.
+
+        @param data bytes to be compressed
+        @param gzip true for gzip, false for a zlib deflate stream
+        @return compressed bytes
+        @throws TestFailed if the bytes can't be compressed
+     */
+    private static byte[] compress(byte[] data, boolean gzip) throws TestFailed {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = gzip ? new GZIPOutputStream(compressed) : new DeflaterOutputStream(compressed)) {
+            out.write(data);
+        } catch (IOException e) {
+            throw new TestFailed("unable to compress the test corpus", e);
+        }
+        return compressed.toByteArray();
+    }
+}
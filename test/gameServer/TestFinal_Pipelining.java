@@ -0,0 +1,87 @@
+package test.gameServer;
+
+import test.util.*;
+import static test.Lab0CheckpointTests.gPortStr;
+
+/** Tests command pipelining and measures its throughput.
+
+    <p>
+    A bot client sends a scripted HELLO, NEW_GAME and JOIN_GAME sequence in a
+    single write and checks that every command is answered, in order. Then the
+    same number of commands is sent by a lock-step client, waiting for each
+    response like the other tests, and by a pipelined client, sending all the
+    commands before reading the responses. The commands/second of both are
+    printed, and the pipelined client must not be slower.
+ */
+public class TestFinal_Pipelining extends Test {
+
+    /** Test notice. */
+    public static final String notice =
+        "checking pipelined commands and their throughput";
+
+    /** Number of commands sent by each measured client. */
+    private static final int COMMANDS = 2000;
+
+    /** Address of the test game server. */
+    private static String address;
+    /** Players sending the commands. */
+    private static TestGameClient botPlayer, lockStepPlayer, pipelinedPlayer;
+
+    /** Initialize the test. */
+    @Override
+    protected void initialize() throws TestFailed {
+        address = "localhost:" + gPortStr;
+        botPlayer = new TestGameClient(address, "pipeline_bot");
+        lockStepPlayer = new TestGameClient(address, "lock_step");
+        pipelinedPlayer = new TestGameClient(address, "pipelined");
+    }
+
+    /** Performs the test. */
+    @Override
+    protected void perform() throws TestFailed {
+        String tag = new TestGame(0).randSeq(6);
+        botPlayer.send("HELLO " + botPlayer.p.uname + "\nNEW_GAME " + tag + "\nJOIN_GAME BAD\n");
+        if(!botPlayer.ReadResponse().equals("Welcome to Word Count " + botPlayer.p.uname + "! Do you want to create a new game or join an existing game?"))
+            throw new TestFailed("incorrect response to pipelined HELLO");
+        if(!botPlayer.ReadResponse().equals("Game " + tag + " created! You are the leader of the game. Waiting for players to join."))
+            throw new TestFailed("incorrect response to pipelined NEW_GAME");
+        if(!botPlayer.ReadResponse().equals("Game BAD doesn't exist! Please enter correct tag or create a new game."))
+            throw new TestFailed("incorrect response to pipelined JOIN_GAME");
+
+        String expected = "Game BAD doesn't exist! Please enter correct tag or create a new game.";
+        lockStepPlayer.SendHello();
+        lockStepPlayer.ReadResponse();
+        long start = System.nanoTime();
+        for (int i = 0; i < COMMANDS; i++) {
+            lockStepPlayer.SendJoinGame("BAD");
+            if(!lockStepPlayer.ReadResponse().equals(expected))
+                throw new TestFailed("incorrect response to lock-step JOIN_GAME");
+        }
+        double lockStep = COMMANDS / ((System.nanoTime() - start) / 1e9);
+
+        pipelinedPlayer.SendHello();
+        pipelinedPlayer.ReadResponse();
+        StringBuilder commands = new StringBuilder();
+        for (int i = 0; i < COMMANDS; i++) {
+            commands.append("JOIN_GAME BAD\n");
+        }
+        start = System.nanoTime();
+        pipelinedPlayer.send(commands.toString());
+        for (int i = 0; i < COMMANDS; i++) {
+            if(!pipelinedPlayer.ReadResponse().equals(expected))
+                throw new TestFailed("incorrect response to pipelined JOIN_GAME");
+        }
+        double pipelined = COMMANDS / ((System.nanoTime() - start) / 1e9);
+
+        System.out.println(String.format("lock-step: %.0f commands/s, pipelined: %.0f commands/s (%.1fx)",
+                lockStep, pipelined, pipelined / lockStep));
+        if (pipelined < lockStep)
+            throw new TestFailed("pipelined commands are slower than lock-step commands");
+
+        botPlayer.SendGoodbye();
+        botPlayer.ReadResponse();
+        botPlayer.stop();
+        lockStepPlayer.stop();
+        pipelinedPlayer.stop();
+    }
+}
@@ -0,0 +1,92 @@
+package test.gameServer;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import test.util.*;
+
+/** Tests that words are picked and counted as whole words.
+
+    <p>
+    After a game is started, the leader uploads a small text where
+    <code>the</code> occurs four times as a word, in any case, and five more
+    times inside other words. The word picker must not be able to pick
+    <code>th</code>, which only occurs inside words, and after picking
+    <code>the</code> the player guessing four must win over the player
+    guessing the number of times it occurs inside the text. A guess that
+    is not a number must be rejected.
+ */
+public class TestFinal_WholeWordCount extends Test {
+
+    /** Test notice. */
+    public static final String notice =
+        "checking whole word counting using RANDOM_WORD and WORD_COUNT";
+
+    /** Text uploaded by the leader. */
+    private static final String TEXT = "the Theme there THE the, then the_end other the.";
+    /** Number of times the picked word occurs as a whole word. */
+    private static final int WORD_COUNT = 4;
+    /** Number of times the picked word occurs anywhere in the text. */
+    private static final int SUBSTRING_COUNT = 9;
+
+    /** Performs the test. */
+    @Override
+    protected void perform() throws TestFailed {
+        TestGame testGame = new TestGame(4);
+        testGame.GameSetup();
+        testGame.NewGame();
+        testGame.JoinGame();
+        testGame.StartGame();
+        TestGameClient leader = testGame.leader;
+
+        byte[] payload = TEXT.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        line.writeBytes(("FILE_UPLOAD " + testGame.tag + " words.txt " + payload.length + " ")
+            .getBytes(StandardCharsets.UTF_8));
+        line.writeBytes(payload);
+        line.write('\n');
+        leader.send(line.toByteArray());
+        if(!leader.ReadResponse().equals("Upload completed! Waiting for word selection."))
+            throw new TestFailed("incorrect leader response after FILE_UPLOAD");
+        TestGameClient picker = null;
+        for (int i = 1; i < testGame.playersInGame.size(); i++) {
+            TestGameClient player = testGame.playersInGame.get(i);
+            if (player.ReadResponse().equals("Upload completed! Please select a word from words.txt."))
+                picker = player;
+        }
+        if (picker == null)
+            throw new TestFailed("no word picker after FILE_UPLOAD");
+
+        picker.SendRandomWord(testGame.tag, "th");
+        if(!picker.ReadResponse().equals("Word th is not a valid choice, choose another word."))
+            throw new TestFailed("a word only found inside other words was accepted by RANDOM_WORD");
+
+        picker.SendRandomWord(testGame.tag, "the");
+        for (TestGameClient player : testGame.playersInGame) {
+            if(!player.ReadResponse().equals("Word selected is the! Guess the word count."))
+                throw new TestFailed("incorrect response to player after RANDOM_WORD selection");
+        }
+
+        picker.send("WORD_COUNT " + testGame.tag + " four\n");
+        if(!picker.ReadResponse().equals("Invalid arguments for command WORD_COUNT."))
+            throw new TestFailed("incorrect response to WORD_COUNT with a guess that is not a number");
+
+        // the exact whole word count wins over the count of the substring and over far off guesses
+        TestGameClient exact = testGame.playersInGame.get(1);
+        for (int i = 0; i < testGame.playersInGame.size(); i++) {
+            TestGameClient player = testGame.playersInGame.get(i);
+            int guess = player == exact ? WORD_COUNT : i == 0 ? SUBSTRING_COUNT : 100 * i;
+            player.SendGuessCount(testGame.tag, guess);
+        }
+        for (TestGameClient player : testGame.playersInGame) {
+            String expected = player == exact
+                ? "Congratulations you are the winner!" : "Sorry you lose! Better luck next time.";
+            if(!player.ReadResponse().equals(expected))
+                throw new TestFailed("the count of the picked word is not its whole word count");
+        }
+        if(!leader.ReadResponse().equals("Game "+testGame.tag+" complete. Do you want to restart or close the game?"))
+            throw new TestFailed("incorrect response to leader after WORD_COUNT");
+
+        testGame.cleanUp();
+    }
+}
@@ -112,6 +112,23 @@ public class TestGameClient {
         send("RESTART "+tag+"\n");
     }
 
+    /**
+     * Sends raw bytes to server, e.g. binary frames
+     *
+     * @param msg bytes to be sent
+     */
+    protected void send(byte[] msg) {
+        try {
+            if (s != null) {
+                out.flush();
+                s.getOutputStream().write(msg);
+                s.getOutputStream().flush();
+            }
+        } catch (IOException e) {
+            System.out.println(e);
+        }
+    }
+
     protected void SendGoodbye() {
         send("GOODBYE\n");
     }